@@ -1,13 +1,19 @@
 package de.pascxl.packery.buffer;
 
+import de.pascxl.packery.network.ChannelIdentity;
+import de.pascxl.packery.network.codec.PacketCodecContext;
+import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketFactory;
 import io.netty5.buffer.Buffer;
 import io.netty5.buffer.BufferAccessor;
 import io.netty5.buffer.BufferRef;
+import io.netty5.buffer.CompositeBuffer;
 
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.io.BufferedWriter;
 import java.io.Writer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,7 +43,20 @@ import java.util.UUID;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-public record ByteBuffer(Buffer buffer) {
+public record ByteBuffer(Buffer buffer, PacketCodecContext context) {
+
+    private static final ClassValue<Object[]> ENUM_CONSTANTS = new ClassValue<>() {
+        @Override
+        protected Object[] computeValue(Class<?> type) {
+            return type.getEnumConstants();
+        }
+    };
+    private static final int SCRATCH_SIZE = 8192;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+    public ByteBuffer(Buffer buffer) {
+        this(buffer, null);
+    }
 
     public ByteBuffer writeInt(int value) {
         this.buffer.writeInt(value);
@@ -48,15 +67,236 @@ public record ByteBuffer(Buffer buffer) {
         return this.buffer.readInt();
     }
 
+    public ByteBuffer writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            this.buffer.writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.buffer.writeByte((byte) value);
+        return this;
+    }
+
+    public int readVarInt() {
+        var value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            var read = this.buffer.readByte();
+            value |= (read & 0x7F) << shift;
+            if ((read & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("VarInt is longer than 5 bytes");
+    }
+
+    public static int varIntSize(int value) {
+        var size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public ByteBuffer writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.buffer.writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.buffer.writeByte((byte) value);
+        return this;
+    }
+
+    public long readVarLong() {
+        var value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            var read = this.buffer.readByte();
+            value |= (long) (read & 0x7F) << shift;
+            if ((read & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("VarLong is longer than 10 bytes");
+    }
+
+    public ByteBuffer writeSignedVarInt(int value) {
+        return this.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public int readSignedVarInt() {
+        var value = this.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public ByteBuffer writeSignedVarLong(long value) {
+        return this.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public long readSignedVarLong() {
+        var value = this.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     public ByteBuffer writeString(String value) {
-        var bytes = value.getBytes();
-        this.buffer.writeInt(bytes.length);
-        this.buffer.writeBytes(bytes);
+        var length = utf8Length(value);
+        this.writeVarInt(length);
+        this.buffer.ensureWritable(length);
+        if (!CompositeBuffer.isComposite(this.buffer)) {
+            try (var iterator = this.buffer.forEachComponent()) {
+                var component = iterator.firstWritable();
+                if (component != null && component.writableBytes() >= length) {
+                    encodeUtf8(value, length, component.writableBuffer());
+                    component.skipWritableBytes(length);
+                    return this;
+                }
+            }
+        }
+        var bytes = scratch(length);
+        encodeUtf8(value, length, java.nio.ByteBuffer.wrap(bytes));
+        this.buffer.writeBytes(bytes, 0, length);
         return this;
     }
 
     public String readString() {
-        return this.buffer.readCharSequence(this.buffer.readInt(), StandardCharsets.UTF_8).toString();
+        var length = this.readVarInt();
+        if (length < 0 || length > this.buffer.readableBytes()) {
+            throw new IndexOutOfBoundsException("String length " + length + " exceeds " + this.buffer.readableBytes() + " readable bytes");
+        }
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstReadable();
+            if (component != null && component.readableBytes() >= length && component.hasReadableArray()) {
+                var value = new String(component.readableArray(), component.readableArrayOffset(), length, StandardCharsets.UTF_8);
+                this.buffer.skipReadableBytes(length);
+                return value;
+            }
+        }
+        var bytes = scratch(length);
+        this.buffer.readBytes(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public static int utf8Length(String value) {
+        var chars = value.length();
+        var length = chars;
+        for (int i = 0; i < chars; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static void encodeUtf8(String value, int length, java.nio.ByteBuffer target) {
+        var position = target.position();
+        var chars = value.length();
+        if (length == chars) {
+            for (int i = 0; i < chars; i++) {
+                var c = value.charAt(i);
+                target.put(position + i, c < 0x80 ? (byte) c : (byte) '?');
+            }
+            return;
+        }
+        for (int i = 0; i < chars; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                target.put(position++, (byte) c);
+            } else if (c < 0x800) {
+                target.put(position++, (byte) (0xC0 | c >> 6));
+                target.put(position++, (byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                target.put(position++, (byte) (0xF0 | codePoint >> 18));
+                target.put(position++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                target.put(position++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                target.put(position++, (byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                target.put(position++, (byte) '?');
+            } else {
+                target.put(position++, (byte) (0xE0 | c >> 12));
+                target.put(position++, (byte) (0x80 | c >> 6 & 0x3F));
+                target.put(position++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static byte[] scratch(int length) {
+        if (length > SCRATCH_SIZE) {
+            return new byte[length];
+        }
+        return SCRATCH.get();
+    }
+
+    public ByteBuffer writeCachedString(String value) {
+        if (this.context != null) {
+            this.context.writeCachedString(this, value);
+            return this;
+        }
+        this.writeVarInt(0);
+        return this.writeString(value);
+    }
+
+    public String readCachedString() {
+        if (this.context != null) {
+            return this.context.readCachedString(this);
+        }
+        if (this.readVarInt() != 0) {
+            throw new IllegalStateException("Dictionary references cannot be resolved without a codec context");
+        }
+        return this.readString();
+    }
+
+    public ByteBuffer writeTypeName(String value) {
+        if (this.context != null) {
+            this.context.writeTypeName(this, value);
+            return this;
+        }
+        this.writeVarInt(0);
+        return this.writeString(value);
+    }
+
+    public String readTypeName() {
+        if (this.context != null) {
+            return this.context.readTypeName(this);
+        }
+        if (this.readVarInt() != 0) {
+            throw new IllegalStateException("Dictionary references cannot be resolved without a codec context");
+        }
+        return this.readString();
+    }
+
+    public ByteBuffer writeCachedUUID(UUID uuid) {
+        if (this.context != null) {
+            this.context.writeCachedUUID(this, uuid);
+            return this;
+        }
+        this.writeVarInt(0);
+        return this.writeUUID(uuid);
+    }
+
+    public UUID readCachedUUID() {
+        if (this.context != null) {
+            return this.context.readCachedUUID(this);
+        }
+        if (this.readVarInt() != 0) {
+            throw new IllegalStateException("Dictionary references cannot be resolved without a codec context");
+        }
+        return this.readUUID();
+    }
+
+    public ByteBuffer writeChannelIdentity(ChannelIdentity channelIdentity) {
+        return this.writeCachedString(channelIdentity.namespace()).writeCachedUUID(channelIdentity.uniqueId());
+    }
+
+    public ChannelIdentity readChannelIdentity() {
+        return new ChannelIdentity(this.readCachedString(), this.readCachedUUID());
     }
 
     public ByteBuffer writeBoolean(Boolean booleanValue) {
@@ -78,13 +318,70 @@ public record ByteBuffer(Buffer buffer) {
         return new UUID(this.buffer.readLong(), this.buffer.readLong());
     }
 
-    public ByteBuffer writeEnum(Enum<?> value) {
-        this.buffer.writeInt(value.ordinal());
+    public ByteBuffer writePacketType(Class<? extends NettyPacket> packetClass) {
+        if (this.context != null) {
+            this.context.writePacketType(this, packetClass);
+            return this;
+        }
+        this.writeVarInt(1);
+        return this.writeString(packetClass.getName());
+    }
+
+    public ByteBuffer writePacketType(String className) {
+        if (this.context != null) {
+            this.context.writePacketType(this, className);
+            return this;
+        }
+        this.writeVarInt(1);
+        return this.writeString(className);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<? extends NettyPacket> readPacketType() throws ClassNotFoundException {
+        if (this.context != null) {
+            return this.context.readPacketType(this);
+        }
+        if (this.readVarInt() != 1) {
+            throw new IllegalStateException("Packet ids cannot be resolved without a codec context");
+        }
+        var clazz = Class.forName(this.readString());
+        if (!NettyPacket.class.isAssignableFrom(clazz)) {
+            throw new ClassCastException(clazz.getName() + " is not a NettyPacket");
+        }
+        return (Class<? extends NettyPacket>) clazz;
+    }
+
+    public ByteBuffer writePacket(NettyPacket packet) {
+        this.writePacketType(packet.getClass());
+        packet.write(this);
         return this;
     }
 
+    public NettyPacket readPacket() throws ClassNotFoundException {
+        var packet = PacketFactory.createPooled(this.readPacketType());
+        if (packet == null) {
+            return null;
+        }
+        packet.read(this);
+        return packet;
+    }
+
+    public ByteBuffer writeEnum(Enum<?> value) {
+        return this.writeVarInt(value.ordinal());
+    }
+
+    @SuppressWarnings("unchecked")
     public <T extends Enum<T>> T readEnum(Class<T> clazz) {
-        return clazz.getEnumConstants()[this.buffer.readInt()];
+        return (T) ENUM_CONSTANTS.get(clazz)[this.readVarInt()];
+    }
+
+    public ByteBuffer writeByte(byte value) {
+        this.buffer.writeByte(value);
+        return this;
+    }
+
+    public byte readByte() {
+        return this.buffer.readByte();
     }
 
     public ByteBuffer writeLong(long value) {
@@ -114,8 +411,196 @@ public record ByteBuffer(Buffer buffer) {
         return this.buffer.readDouble();
     }
 
+    public ByteBuffer writeIntArray(int[] values) {
+        this.writeVarInt(values.length);
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (var value : values) {
+                this.buffer.writeInt(value);
+            }
+            return this;
+        }
+        var written = 0;
+        this.buffer.ensureWritable(values.length * Integer.BYTES);
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstWritable();
+            if (component != null) {
+                written = Math.min(values.length, component.writableBytes() / Integer.BYTES);
+                component.writableBuffer().order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(values, 0, written);
+                component.skipWritableBytes(written * Integer.BYTES);
+            }
+        }
+        for (int i = written; i < values.length; i++) {
+            this.buffer.writeInt(values[i]);
+        }
+        return this;
+    }
+
+    public int[] readIntArray() {
+        var values = new int[this.readArraySize(Integer.BYTES)];
+        this.readIntArray(values, values.length);
+        return values;
+    }
+
+    public int readIntArray(int[] values) {
+        var size = this.readArraySize(Integer.BYTES);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Array of length " + values.length + " cannot hold " + size + " elements");
+        }
+        this.readIntArray(values, size);
+        return size;
+    }
+
+    private void readIntArray(int[] values, int size) {
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (int i = 0; i < size; i++) {
+                values[i] = this.buffer.readInt();
+            }
+            return;
+        }
+        var read = 0;
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstReadable();
+            if (component != null) {
+                read = Math.min(size, component.readableBytes() / Integer.BYTES);
+                component.readableBuffer().order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(values, 0, read);
+                component.skipReadableBytes(read * Integer.BYTES);
+            }
+        }
+        for (int i = read; i < size; i++) {
+            values[i] = this.buffer.readInt();
+        }
+    }
+
+    public ByteBuffer writeLongArray(long[] values) {
+        this.writeVarInt(values.length);
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (var value : values) {
+                this.buffer.writeLong(value);
+            }
+            return this;
+        }
+        var written = 0;
+        this.buffer.ensureWritable(values.length * Long.BYTES);
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstWritable();
+            if (component != null) {
+                written = Math.min(values.length, component.writableBytes() / Long.BYTES);
+                component.writableBuffer().order(ByteOrder.BIG_ENDIAN).asLongBuffer().put(values, 0, written);
+                component.skipWritableBytes(written * Long.BYTES);
+            }
+        }
+        for (int i = written; i < values.length; i++) {
+            this.buffer.writeLong(values[i]);
+        }
+        return this;
+    }
+
+    public long[] readLongArray() {
+        var values = new long[this.readArraySize(Long.BYTES)];
+        this.readLongArray(values, values.length);
+        return values;
+    }
+
+    public int readLongArray(long[] values) {
+        var size = this.readArraySize(Long.BYTES);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Array of length " + values.length + " cannot hold " + size + " elements");
+        }
+        this.readLongArray(values, size);
+        return size;
+    }
+
+    private void readLongArray(long[] values, int size) {
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (int i = 0; i < size; i++) {
+                values[i] = this.buffer.readLong();
+            }
+            return;
+        }
+        var read = 0;
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstReadable();
+            if (component != null) {
+                read = Math.min(size, component.readableBytes() / Long.BYTES);
+                component.readableBuffer().order(ByteOrder.BIG_ENDIAN).asLongBuffer().get(values, 0, read);
+                component.skipReadableBytes(read * Long.BYTES);
+            }
+        }
+        for (int i = read; i < size; i++) {
+            values[i] = this.buffer.readLong();
+        }
+    }
+
+    public ByteBuffer writeDoubleArray(double[] values) {
+        this.writeVarInt(values.length);
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (var value : values) {
+                this.buffer.writeDouble(value);
+            }
+            return this;
+        }
+        var written = 0;
+        this.buffer.ensureWritable(values.length * Double.BYTES);
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstWritable();
+            if (component != null) {
+                written = Math.min(values.length, component.writableBytes() / Double.BYTES);
+                component.writableBuffer().order(ByteOrder.BIG_ENDIAN).asDoubleBuffer().put(values, 0, written);
+                component.skipWritableBytes(written * Double.BYTES);
+            }
+        }
+        for (int i = written; i < values.length; i++) {
+            this.buffer.writeDouble(values[i]);
+        }
+        return this;
+    }
+
+    public double[] readDoubleArray() {
+        var values = new double[this.readArraySize(Double.BYTES)];
+        this.readDoubleArray(values, values.length);
+        return values;
+    }
+
+    public int readDoubleArray(double[] values) {
+        var size = this.readArraySize(Double.BYTES);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Array of length " + values.length + " cannot hold " + size + " elements");
+        }
+        this.readDoubleArray(values, size);
+        return size;
+    }
+
+    private void readDoubleArray(double[] values, int size) {
+        if (CompositeBuffer.isComposite(this.buffer)) {
+            for (int i = 0; i < size; i++) {
+                values[i] = this.buffer.readDouble();
+            }
+            return;
+        }
+        var read = 0;
+        try (var iterator = this.buffer.forEachComponent()) {
+            var component = iterator.firstReadable();
+            if (component != null) {
+                read = Math.min(size, component.readableBytes() / Double.BYTES);
+                component.readableBuffer().order(ByteOrder.BIG_ENDIAN).asDoubleBuffer().get(values, 0, read);
+                component.skipReadableBytes(read * Double.BYTES);
+            }
+        }
+        for (int i = read; i < size; i++) {
+            values[i] = this.buffer.readDouble();
+        }
+    }
+
+    private int readArraySize(int elementBytes) {
+        var size = this.readVarInt();
+        if (size < 0 || (long) size * elementBytes > this.buffer.readableBytes()) {
+            throw new IllegalStateException("Array size " + size + " exceeds the readable bytes");
+        }
+        return size;
+    }
+
     public ByteBuffer writeCollectionInteger(Collection<Integer> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeInt(element);
         }
@@ -123,7 +608,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<Integer> readCollectionInteger() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<Integer> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readInt());
@@ -131,34 +616,76 @@ public record ByteBuffer(Buffer buffer) {
         return collection;
     }
 
+    // Copies the items, they stay owned by the caller
     public ByteBuffer writeCollectionByteBuffer(Collection<ByteBuffer> collection) {
-        buffer.writeInt(collection.size());
+        return this.writeCollectionByteBuffer(collection, false);
+    }
+
+    // With transfer the caller hands the items over: a composite target appends them as components, any other target
+    // copies and closes them
+    public ByteBuffer writeCollectionByteBuffer(Collection<ByteBuffer> collection, boolean transfer) {
+        this.writeVarInt(collection.size());
+        boolean compose = transfer && CompositeBuffer.isComposite(buffer) && !buffer.readOnly();
         for (ByteBuffer item : collection) {
             Buffer itemBuffer = item.buffer();
-            int length = itemBuffer.readableBytes();
-            buffer.writeInt(length);
-            buffer.writeBytes(itemBuffer);
+            this.writeVarInt(itemBuffer.readableBytes());
+            if (compose && !itemBuffer.readOnly()) {
+                var composite = (CompositeBuffer) buffer;
+                trimWritable(composite);
+                composite.extendWith(readableRegion(itemBuffer).send());
+            } else {
+                buffer.writeBytes(itemBuffer);
+                if (transfer) {
+                    itemBuffer.close();
+                }
+            }
         }
         return this;
     }
 
+    // extendWith rejects a composite whose last component still has unwritten capacity
+    private static void trimWritable(CompositeBuffer composite) {
+        if (composite.writableBytes() == 0) {
+            return;
+        }
+        var written = composite.split();
+        composite.split(composite.capacity()).close();
+        composite.extendWith(written.send());
+    }
+
+    private static Buffer readableRegion(Buffer buffer) {
+        if (buffer.writableBytes() > 0) {
+            var region = buffer.split();
+            buffer.close();
+            buffer = region;
+        }
+        if (buffer.readerOffset() > 0) {
+            buffer.split(buffer.readerOffset()).close();
+        }
+        return buffer;
+    }
+
+    // Returns split views of this buffer without copying. Every item owns its own region and must be closed by the caller.
     public Collection<ByteBuffer> readCollectionByteBuffer() {
-        int size = buffer.readInt();
+        int size = this.readArraySize(1);
         List<ByteBuffer> result = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            int length = buffer.readInt();
-            byte[] data = new byte[length];
-            buffer.readBytes(java.nio.ByteBuffer.wrap(data));
-            Buffer itemBuffer = buffer.implicitCapacityLimit(data.length).copy();
-            itemBuffer.writeBytes(data);
-            ByteBuffer item = new ByteBuffer(itemBuffer);
-            result.add(item);
+        try {
+            for (int i = 0; i < size; i++) {
+                int length = this.readVarInt();
+                if (length < 0 || length > buffer.readableBytes()) {
+                    throw new IndexOutOfBoundsException("Buffer length " + length + " exceeds " + buffer.readableBytes() + " readable bytes");
+                }
+                result.add(new ByteBuffer(buffer.readSplit(length)));
+            }
+        } catch (RuntimeException exception) {
+            result.forEach(item -> item.buffer().close());
+            throw exception;
         }
         return result;
     }
 
     public ByteBuffer writeCollectionString(Collection<String> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeString(element);
         }
@@ -166,7 +693,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<String> readCollectionString() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<String> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readString());
@@ -175,7 +702,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionBoolean(Collection<Boolean> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeBoolean(element);
         }
@@ -183,7 +710,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<Boolean> readCollectionBoolean() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<Boolean> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readBoolean());
@@ -192,7 +719,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionUUID(Collection<UUID> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeUUID(element);
         }
@@ -200,7 +727,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<UUID> readCollectionUUID() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<UUID> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readUUID());
@@ -209,7 +736,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionEnum(Collection<Enum<?>> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeEnum(element);
         }
@@ -217,7 +744,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public <T extends Enum<T>> Collection<T> readCollectionEnum(Class<T> clazz) {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<T> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readEnum(clazz));
@@ -226,7 +753,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionLong(Collection<Long> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeLong(element);
         }
@@ -234,7 +761,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<Long> readCollectionLong() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<Long> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readLong());
@@ -243,7 +770,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionFloat(Collection<Float> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeFloat(element);
         }
@@ -251,7 +778,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<Float> readCollectionFloat() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<Float> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readFloat());
@@ -260,7 +787,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public ByteBuffer writeCollectionDouble(Collection<Double> collection) {
-        this.writeInt(collection.size());
+        this.writeVarInt(collection.size());
         for (var element : collection) {
             this.writeDouble(element);
         }
@@ -268,7 +795,7 @@ public record ByteBuffer(Buffer buffer) {
     }
 
     public Collection<Double> readCollectionDouble() {
-        var size = this.readInt();
+        var size = this.readVarInt();
         Collection<Double> collection = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             collection.add(this.readDouble());
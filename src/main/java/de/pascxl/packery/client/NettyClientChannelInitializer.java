@@ -27,6 +27,9 @@ package de.pascxl.packery.client;
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.network.codec.PacketClassDecoder;
 import de.pascxl.packery.network.codec.PacketClassEncoder;
+import de.pascxl.packery.network.codec.PacketCodecContext;
+import de.pascxl.packery.network.codec.PacketFrameDecoder;
+import de.pascxl.packery.network.codec.PacketFrameEncoder;
 import io.netty5.channel.Channel;
 import io.netty5.channel.ChannelInitializer;
 import lombok.AllArgsConstructor;
@@ -44,9 +47,12 @@ public class NettyClientChannelInitializer extends ChannelInitializer<Channel> {
             Packery.log(Level.SEVERE, this.getClass(), "Channel is null");
             return;
         }
+        var codecContext = new PacketCodecContext(this.client.packetManager);
         ch.pipeline().addLast(
-                new PacketClassDecoder(this.client.packetManager, this.client.name),
-                new PacketClassEncoder(this.client.packetManager, this.client.name),
+                new PacketFrameDecoder(),
+                new PacketFrameEncoder(this.client.packetManager.flushWindowNanos(), this.client.packetManager.maxBatchSize()),
+                new PacketClassDecoder(this.client.packetManager, this.client.name, codecContext),
+                new PacketClassEncoder(this.client.packetManager, this.client.name, codecContext),
                 new NettyClientHandler(client)
         );
         /*ch.pipeline().addLast(new PacketInDecoder(this.client.packetManager(), this.client.name()),
@@ -25,10 +25,12 @@ package de.pascxl.packery.client;
  */
 
 import de.pascxl.packery.Packery;
+import de.pascxl.packery.internal.NettyPacketOutAllowedPackets;
 import de.pascxl.packery.internal.NettyPacketOutAuthentication;
 import de.pascxl.packery.internal.NettyPacketOutIdentityActive;
 import de.pascxl.packery.internal.NettyPacketOutIdentityInactive;
 import de.pascxl.packery.network.NettyTransmitter;
+import de.pascxl.packery.network.codec.PacketBatch;
 import de.pascxl.packery.packet.NettyPacket;
 import de.pascxl.packery.packet.defaults.relay.RoutingResultReplyPacket;
 import io.netty5.channel.ChannelHandlerContext;
@@ -45,7 +47,25 @@ public class NettyClientHandler extends SimpleChannelInboundHandler<NettyPacket>
 
     @Override
     protected void messageReceived(ChannelHandlerContext ctx, NettyPacket msg) throws Exception {
-        Packery.debug(Level.INFO, this.getClass(), "messageReceived: " + msg.getClass().getSimpleName());
+        if (Packery.DEV_MODE) {
+            Packery.debug(Level.INFO, this.getClass(), "messageReceived: " + msg.getClass().getSimpleName());
+        }
+
+        if (msg instanceof NettyPacketOutAuthentication authentication) {
+            Packery.debug(Level.INFO, this.getClass(), "Received packet table from server");
+            if (authentication.allowedPackets() != null) {
+                this.client.nettyTransmitter().remoteAdmission(this.client.packetManager().remoteAdmission(authentication.allowedPackets()));
+            }
+            return;
+        }
+
+        if (msg instanceof NettyPacketOutAllowedPackets allowedPackets) {
+            var transmitter = this.client.nettyTransmitter();
+            if (transmitter.remoteAdmission() != null) {
+                transmitter.remoteAdmission(this.client.packetManager().remoteAdmission(transmitter.remoteAdmission(), allowedPackets.packets(), allowedPackets.allowed()));
+            }
+            return;
+        }
 
         if (msg instanceof NettyPacketOutIdentityActive activePacket) {
             Packery.debug(Level.INFO, this.getClass(), "PacketOutIdentityActive Channel-Identity: {0}", activePacket.channelIdentity());
@@ -79,15 +99,46 @@ public class NettyClientHandler extends SimpleChannelInboundHandler<NettyPacket>
         this.client.packetManager().call(msg, this.client.nettyTransmitter(), ctx, this.client.channelIdentity());
     }
 
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof PacketBatch batch)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+        // control packets run on their own in batch order, the packets between them are delivered as sub-batches
+        var start = 0;
+        for (var index = 0; index < batch.size(); index++) {
+            var packet = batch.get(index);
+            if (packet instanceof NettyPacketOutAuthentication
+                    || packet instanceof NettyPacketOutAllowedPackets
+                    || packet instanceof NettyPacketOutIdentityActive
+                    || packet instanceof NettyPacketOutIdentityInactive
+                    || packet instanceof RoutingResultReplyPacket) {
+                this.call(ctx, batch, start, index);
+                this.messageReceived(ctx, packet);
+                start = index + 1;
+            }
+        }
+        this.call(ctx, batch, start, batch.size());
+    }
+
+    private void call(ChannelHandlerContext ctx, PacketBatch batch, int from, int to) {
+        if (from < to) {
+            this.client.packetManager().call(from == 0 && to == batch.size() ? batch : batch.subList(from, to), this.client.nettyTransmitter(), ctx, this.client.channelIdentity());
+        }
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        this.client.nettyTransmitter = new NettyTransmitter(this.client.channelIdentity(), ctx.channel());
-        this.client.nettyTransmitter().channel().writeAndFlush(new NettyPacketOutAuthentication(this.client.channelIdentity()));
+        this.client.nettyTransmitter = new NettyTransmitter(this.client.channelIdentity(), ctx.channel(), this.client.packetManager());
+        this.client.packetManager().addPeer(this.client.nettyTransmitter());
+        this.client.nettyTransmitter().channel().writeAndFlush(new NettyPacketOutAuthentication(this.client.channelIdentity(), this.client.packetManager().packetRegistry().table(), this.client.packetManager().allowedPackets()));
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         if ((!ctx.channel().isActive() || !ctx.channel().isOpen() || !ctx.channel().isWritable())) {
+            this.client.packetManager().removePeer(this.client.nettyTransmitter());
             ctx.channel().close();
             switch (client.inactiveAction()) {
                 case SHUTDOWN -> System.exit(0);
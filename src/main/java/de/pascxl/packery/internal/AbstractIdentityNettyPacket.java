@@ -41,13 +41,13 @@ public abstract class AbstractIdentityNettyPacket extends NettyPacket {
 
     @Override
     public void write(ByteBuffer out) {
-        out.writeString(channelIdentity.namespace()).writeUUID(channelIdentity.uniqueId());
+        out.writeChannelIdentity(channelIdentity);
         writeCustom(out);
     }
 
     @Override
     public void read(ByteBuffer in) {
-        this.channelIdentity = new ChannelIdentity(in.readString(), in.readUUID());
+        this.channelIdentity = in.readChannelIdentity();
         readCustom(in);
     }
 
@@ -0,0 +1,55 @@
+package de.pascxl.packery.internal;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+import lombok.Getter;
+
+import java.util.Collection;
+
+@Getter
+public class NettyPacketOutAllowedPackets extends NettyPacket {
+
+    private boolean allowed;
+    private Collection<String> packets;
+
+    public NettyPacketOutAllowedPackets(boolean allowed, Collection<String> packets) {
+        this.allowed = allowed;
+        this.packets = packets;
+    }
+
+    @Override
+    public void write(ByteBuffer out) {
+        out.writeBoolean(this.allowed);
+        out.writeCollectionString(this.packets);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        this.allowed = in.readBoolean();
+        this.packets = in.readCollectionString();
+    }
+}
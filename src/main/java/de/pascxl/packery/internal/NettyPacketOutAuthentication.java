@@ -28,20 +28,43 @@ import de.pascxl.packery.buffer.ByteBuffer;
 import de.pascxl.packery.network.ChannelIdentity;
 import lombok.Getter;
 
+import java.util.Collection;
+import java.util.List;
+
 @Getter
 public class NettyPacketOutAuthentication extends AbstractIdentityNettyPacket {
 
+    private Collection<String> packetTable;
+    private Collection<String> allowedPackets;
+
     public NettyPacketOutAuthentication(ChannelIdentity channelIdentity) {
+        this(channelIdentity, List.of());
+    }
+
+    public NettyPacketOutAuthentication(ChannelIdentity channelIdentity, Collection<String> packetTable) {
+        this(channelIdentity, packetTable, null);
+    }
+
+    public NettyPacketOutAuthentication(ChannelIdentity channelIdentity, Collection<String> packetTable, Collection<String> allowedPackets) {
         super(channelIdentity);
+        this.packetTable = packetTable;
+        this.allowedPackets = allowedPackets;
     }
 
     @Override
     public void writeCustom(ByteBuffer byteBuffer) {
         byteBuffer.writeBoolean(true);
+        byteBuffer.writeCollectionString(this.packetTable);
+        byteBuffer.writeBoolean(this.allowedPackets != null);
+        if (this.allowedPackets != null) {
+            byteBuffer.writeCollectionString(this.allowedPackets);
+        }
     }
 
     @Override
     public void readCustom(ByteBuffer byteBuffer) {
         byteBuffer.readBoolean();
+        this.packetTable = byteBuffer.readCollectionString();
+        this.allowedPackets = byteBuffer.readBoolean() ? byteBuffer.readCollectionString() : null;
     }
 }
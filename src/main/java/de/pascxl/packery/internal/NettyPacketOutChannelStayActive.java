@@ -39,11 +39,11 @@ public class NettyPacketOutChannelStayActive extends NettyPacket {
 
     @Override
     public void write(ByteBuffer out) {
-        out.writeLong(time);
+        out.writeVarLong(time);
     }
 
     @Override
     public void read(ByteBuffer in) {
-        this.time = in.readLong();
+        this.time = in.readVarLong();
     }
 }
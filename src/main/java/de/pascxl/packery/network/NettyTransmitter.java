@@ -27,8 +27,12 @@ package de.pascxl.packery.network;
 import de.golgolex.quala.utils.executors.ExecutionUtils;
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketAdmission;
+import de.pascxl.packery.packet.PacketManager;
+import de.pascxl.packery.packet.defaults.relay.RelayedNettyPacket;
 import de.pascxl.packery.packet.sender.PacketSender;
 import io.netty5.channel.Channel;
+import io.netty5.util.Resource;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -38,12 +42,29 @@ import java.util.logging.Level;
 public class NettyTransmitter extends PacketSender {
 
     private final ChannelIdentity channelIdentity;
+    private final PacketManager packetManager;
     @Setter
     private Channel channel;
+    @Setter
+    private volatile PacketAdmission remoteAdmission;
 
     public NettyTransmitter(ChannelIdentity channelIdentity, Channel channel) {
+        this(channelIdentity, channel, null);
+    }
+
+    public NettyTransmitter(ChannelIdentity channelIdentity, Channel channel, PacketManager packetManager) {
         this.channelIdentity = channelIdentity;
         this.channel = channel;
+        this.packetManager = packetManager;
+    }
+
+    private boolean accepted(NettyPacket packet) {
+        if (this.packetManager == null || this.packetManager.isPacketAccepted(this.remoteAdmission, packet)) {
+            return true;
+        }
+        Packery.log(Level.SEVERE, this.getClass(), "The channel {0} does not accept the packet: PacketId: {1}", this.channelIdentity, packet instanceof RelayedNettyPacket relayed ? relayed.packetName() : packet.getClass().getName());
+        Resource.dispose(packet);
+        return false;
     }
 
     @Override
@@ -51,14 +72,13 @@ public class NettyTransmitter extends PacketSender {
     {
         if (!(channel != null && channel.isOpen())) {
             Packery.log(Level.SEVERE, this.getClass(), "Channel is as null or as not open marked");
+            Resource.dispose(packet);
             return;
         }
-        channel.write(packet);
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
+        if (!this.accepted(packet)) {
+            return;
         }
+        channel.write(packet);
         Packery.debug(Level.INFO, this.getClass(), "writePacket: write: " + packet.getClass().getSimpleName());
     }
 
@@ -70,11 +90,6 @@ public class NettyTransmitter extends PacketSender {
             return;
         }
         channel.flush();
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
-        }
         Packery.debug(Level.INFO, this.getClass(), "flush");
     }
 
@@ -82,15 +97,14 @@ public class NettyTransmitter extends PacketSender {
     public <P extends NettyPacket> void sendPacketAsync(P packet) {
         if (!(channel != null && channel.isOpen())) {
             Packery.log(Level.SEVERE, this.getClass(), "Channel is as null or as not open marked");
+            Resource.dispose(packet);
+            return;
+        }
+        if (!this.accepted(packet)) {
             return;
         }
         ExecutionUtils.ASYNC_EXECUTOR.execute(() -> {
             channel.writeAndFlush(packet);
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
-            }
             Packery.debug(Level.INFO, this.getClass(), "sendPacketAsync: writeAndFlush: " + packet.getClass().getSimpleName());
         });
     }
@@ -99,14 +113,13 @@ public class NettyTransmitter extends PacketSender {
     public <P extends NettyPacket> void sendPacket(P packet) {
         if (!(channel != null && channel.isOpen())) {
             Packery.log(Level.SEVERE, this.getClass(), "Channel is as null or as not open marked");
+            Resource.dispose(packet);
             return;
         }
-        channel.writeAndFlush(packet);
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
+        if (!this.accepted(packet)) {
+            return;
         }
+        channel.writeAndFlush(packet);
         Packery.debug(Level.INFO, this.getClass(), "sendPacket: writeAndFlush: " + packet.getClass().getSimpleName());
     }
 
@@ -114,15 +127,14 @@ public class NettyTransmitter extends PacketSender {
     public <P extends NettyPacket> void sendPacketSync(P packet) {
         if (!(channel != null && channel.isOpen())) {
             Packery.log(Level.SEVERE, this.getClass(), "Channel is as null or as not open marked");
+            Resource.dispose(packet);
+            return;
+        }
+        if (!this.accepted(packet)) {
             return;
         }
         ExecutionUtils.DIRECT_EXECUTOR.execute(() -> {
             channel.writeAndFlush(packet);
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
-            }
             Packery.debug(Level.INFO, this.getClass(), "sendPacketSync: writeAndFlush: " + packet.getClass().getSimpleName());
         });
     }
@@ -0,0 +1,73 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import de.pascxl.packery.packet.NettyPacket;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/*
+ * Packets decoded from one socket read, fired by PacketClassDecoder on channelReadComplete when batch delivery is
+ * enabled. The instance is reused for the next read, handlers have to consume it before channelRead returns.
+ */
+public final class PacketBatch extends AbstractList<NettyPacket> implements RandomAccess {
+
+    private NettyPacket[] packets = new NettyPacket[16];
+    private int size;
+
+    PacketBatch() {
+    }
+
+    @Override
+    public NettyPacket get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.packets[index];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean add(NettyPacket packet) {
+        if (this.size == this.packets.length) {
+            this.packets = Arrays.copyOf(this.packets, this.size * 2);
+        }
+        this.packets[this.size++] = packet;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.packets, 0, this.size, null);
+        this.size = 0;
+    }
+}
@@ -24,59 +24,313 @@ package de.pascxl.packery.network.codec;
  * SOFTWARE.
  */
 
-import de.golgolex.quala.reflections.Allocator;
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.internal.NettyPacketOutAuthentication;
 import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketFactory;
 import de.pascxl.packery.packet.PacketManager;
+import de.pascxl.packery.packet.flyweight.FlyweightPacket;
 import io.netty5.buffer.Buffer;
 import io.netty5.channel.ChannelHandlerContext;
-import io.netty5.handler.codec.ByteToMessageDecoder;
-import lombok.AllArgsConstructor;
+import io.netty5.handler.codec.MessageToMessageDecoder;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
-@AllArgsConstructor
-public class PacketClassDecoder extends ByteToMessageDecoder {
+// Frames of at least offloadThreshold bytes are decoded on the decodeExecutor, later frames wait to keep arrival order
+public class PacketClassDecoder extends MessageToMessageDecoder<Buffer> {
+
+    public static final int DEFAULT_OFFLOAD_THRESHOLD = 256 * 1024;
+    public static final Executor DECODE_EXECUTOR = command -> DecodeThreadFactory.EXECUTOR.execute(command);
 
     private final PacketManager packetManager;
     private final String providerName;
+    private final PacketCodecContext codecContext;
+    private final PacketBatch batch;
+    private final Map<Class<?>, FlyweightPacket> views = new HashMap<>();
+    private final ArrayDeque<PendingFrame> pending = new ArrayDeque<>();
+    private boolean removed;
+
+    public PacketClassDecoder(PacketManager packetManager, String providerName, PacketCodecContext codecContext) {
+        this.packetManager = packetManager;
+        this.providerName = providerName;
+        this.codecContext = codecContext;
+        this.batch = packetManager.batchDelivery() ? new PacketBatch() : null;
+    }
 
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, Buffer buffer) throws Exception {
+        var frameLength = buffer.readableBytes();
+        var byteBuffer = new ByteBuffer(buffer, this.codecContext);
+        NettyPacket packet = null;
+        try {
+            var packetClass = byteBuffer.readPacketType();
+            if (Packery.DEV_MODE) {
+                Packery.debug(Level.INFO, this.getClass(), "Decode: " + packetClass.getName());
+            }
+            var flags = buffer.readByte();
+            var uniqueId = (flags & PacketCodecContext.FLAG_UNIQUE_ID) != 0 ? byteBuffer.readUUID() : null;
+
+            var allowed = this.packetManager.isPacketAllow(packetClass, uniqueId);
+            if (!allowed) {
+                Packery.log(Level.SEVERE, this.getClass(), providerName + ": " + "The channel {0} tries to send a packet which is not allowed: PacketId: {1}", channelHandlerContext.channel().remoteAddress(), packetClass.getName());
+                if ((flags & PacketCodecContext.FLAG_DEFINITIONS) == 0) {
+                    return;
+                }
+            }
+
+            if (!this.pending.isEmpty() || this.offloadable(packetClass, flags, allowed, frameLength)) {
+                this.pending.addLast(new PendingFrame(packetClass, flags, uniqueId, allowed, frameLength, buffer.readSplit(buffer.readableBytes())));
+                this.advance(channelHandlerContext);
+                return;
+            }
+
+            packet = this.read(packetClass, uniqueId, allowed, byteBuffer);
+            if (packet instanceof FlyweightPacket flyweight) {
+                this.fireView(channelHandlerContext, flyweight);
+                return;
+            }
+            if (packet != null) {
+                this.deliver(channelHandlerContext, packet);
+            }
+        } catch (Exception exception) {
+            if (packet != null) {
+                packet.release();
+            }
+            Packery.log(Level.SEVERE, this.getClass(), exception.getMessage());
+        }
+    }
+
+    private NettyPacket read(Class<? extends NettyPacket> packetClass, UUID uniqueId, boolean allowed, ByteBuffer byteBuffer) throws Exception {
+        if (!allowed) {
+            var packet = PacketFactory.create(packetClass);
+            if (packet != null) {
+                packet.read(byteBuffer);
+                if (packet instanceof AutoCloseable closeable) {
+                    closeable.close();
+                }
+            }
+            return null;
+        }
+
+        var packet = FlyweightPacket.class.isAssignableFrom(packetClass) ? this.view(packetClass) : PacketFactory.createPooled(packetClass);
+        if (packet == null) {
+            Packery.log(Level.SEVERE, this.getClass(), providerName + ":" + "PacketInstance is null");
+            return null;
+        }
+        packet.uniqueId(uniqueId);
+        try {
+            packet.read(byteBuffer);
+        } catch (Exception exception) {
+            if (packet instanceof FlyweightPacket flyweight) {
+                flyweight.unwrap();
+            } else {
+                packet.release();
+            }
+            throw exception;
+        }
+        if (packet instanceof NettyPacketOutAuthentication authentication) {
+            this.codecContext.remoteTable(authentication.packetTable());
+        }
+        if (Packery.DEV_MODE) {
+            Packery.debug(Level.INFO, this.getClass(), "Read Packet: " + packet.getClass().getName());
+        }
+        return packet;
+    }
+
+    private boolean offloadable(Class<? extends NettyPacket> packetClass, byte flags, boolean allowed, int frameLength) {
+        var threshold = this.packetManager.offloadThreshold();
+        return threshold > 0 && frameLength >= threshold && allowed
+                && (flags & PacketCodecContext.FLAG_DEFINITIONS) == 0
+                && !FlyweightPacket.class.isAssignableFrom(packetClass)
+                && packetClass != NettyPacketOutAuthentication.class;
+    }
+
+    private void advance(ChannelHandlerContext channelHandlerContext) {
+        var inFlight = false;
+        for (var frame : this.pending) {
+            if (frame.state == PendingFrame.DECODING) {
+                inFlight = true;
+                continue;
+            }
+            if (frame.state == PendingFrame.DECODED) {
+                continue;
+            }
+            if (this.offloadable(frame.packetClass, frame.flags, frame.allowed, frame.frameLength)) {
+                this.offload(channelHandlerContext, frame);
+                inFlight = true;
+                continue;
+            }
+            if (inFlight && (frame.flags & PacketCodecContext.FLAG_DEFINITIONS) != 0) {
+                break;
+            }
+            try (var body = frame.body) {
+                frame.body = null;
+                var packet = this.read(frame.packetClass, frame.uniqueId, frame.allowed, new ByteBuffer(body, this.codecContext));
+                if (packet instanceof FlyweightPacket flyweight) {
+                    packet = flyweight.copy();
+                    flyweight.unwrap();
+                }
+                frame.packet = packet;
+            } catch (Exception exception) {
+                Packery.log(Level.SEVERE, this.getClass(), exception.getMessage());
+            }
+            frame.state = PendingFrame.DECODED;
+        }
 
-        if (buffer.readableBytes() < 55) {
-            Packery.debug(Level.SEVERE, this.getClass(), "Packet has not enough readable bytes (" + buffer.readableBytes() + ")");
+        while (!this.pending.isEmpty() && this.pending.peekFirst().state == PendingFrame.DECODED) {
+            var packet = this.pending.pollFirst().packet;
+            if (packet != null) {
+                this.deliver(channelHandlerContext, packet);
+            }
+        }
+    }
+
+    private void offload(ChannelHandlerContext channelHandlerContext, PendingFrame frame) {
+        frame.state = PendingFrame.DECODING;
+        var body = frame.body.send();
+        frame.body = null;
+        var codecContext = this.codecContext.readOnlyCopy();
+        this.packetManager.decodeExecutor().execute(() -> {
+            NettyPacket packet = null;
+            try (var buffer = body.receive()) {
+                packet = PacketFactory.createPooled(frame.packetClass);
+                if (packet == null) {
+                    Packery.log(Level.SEVERE, this.getClass(), providerName + ":" + "PacketInstance is null");
+                } else {
+                    packet.uniqueId(frame.uniqueId);
+                    packet.read(new ByteBuffer(buffer, codecContext));
+                }
+            } catch (Exception exception) {
+                if (packet != null) {
+                    packet.release();
+                    packet = null;
+                }
+                Packery.log(Level.SEVERE, this.getClass(), exception.getMessage());
+            }
+            var decoded = packet;
+            channelHandlerContext.executor().execute(() -> this.offloaded(channelHandlerContext, frame, decoded));
+        });
+    }
+
+    private void offloaded(ChannelHandlerContext channelHandlerContext, PendingFrame frame, NettyPacket packet) {
+        frame.packet = packet;
+        frame.state = PendingFrame.DECODED;
+        if (this.removed) {
+            if (packet != null) {
+                packet.release();
+            }
             return;
         }
+        this.advance(channelHandlerContext);
+        this.fireBatch(channelHandlerContext);
+    }
 
-        var byteBuffer = new ByteBuffer(buffer);
-        var packetClassName = byteBuffer.readString();
+    private void deliver(ChannelHandlerContext channelHandlerContext, NettyPacket packet) {
+        if (this.batch != null) {
+            this.batch.add(packet);
+            return;
+        }
+        channelHandlerContext.fireChannelRead(packet);
+    }
+
+    private FlyweightPacket view(Class<? extends NettyPacket> packetClass) {
+        var view = this.views.get(packetClass);
+        if (view == null) {
+            view = (FlyweightPacket) PacketFactory.create(packetClass);
+            this.views.put(packetClass, view);
+        }
+        return view;
+    }
+
+    private void fireView(ChannelHandlerContext channelHandlerContext, FlyweightPacket view) {
+        this.fireBatch(channelHandlerContext);
         try {
-            Packery.debug(Level.INFO, this.getClass(), "Decode: " + packetClassName);
-            var packetClass = Class.forName(packetClassName);
-            var packet = (NettyPacket) Allocator.unsafeAllocation(packetClass);
+            channelHandlerContext.fireChannelRead(view);
+        } finally {
+            view.unwrap();
+            view.uniqueId(null);
+        }
+    }
 
-            if (packet == null) {
-                Packery.log(Level.SEVERE, this.getClass(), providerName + ":" + "PacketInstance is null");
-                return;
+    private void fireBatch(ChannelHandlerContext channelHandlerContext) {
+        if (this.batch != null && !this.batch.isEmpty()) {
+            try {
+                channelHandlerContext.fireChannelRead(this.batch.size() == 1 ? this.batch.get(0) : this.batch);
+            } finally {
+                this.batch.clear();
             }
+        }
+    }
 
-            var packetUUID = byteBuffer.readUUID();
-            packet.uniqueId((packetUUID.equals(Packery.SYSTEM_UUID) ? null : packetUUID));
+    @Override
+    public void channelReadComplete(ChannelHandlerContext channelHandlerContext) throws Exception {
+        this.fireBatch(channelHandlerContext);
+        channelHandlerContext.fireChannelReadComplete();
+    }
 
-            if (!this.packetManager.isPacketAllow(packet)) {
-                Packery.log(Level.SEVERE, this.getClass(), providerName + ": " + "The channel {0} tries to send a packet which is not allowed: PacketId: {1}", channelHandlerContext.channel().remoteAddress(), packet.getClass().getName());
-                return;
+    @Override
+    public void handlerRemoved(ChannelHandlerContext channelHandlerContext) throws Exception {
+        this.removed = true;
+        if (this.batch != null) {
+            this.batch.forEach(NettyPacket::release);
+            this.batch.clear();
+        }
+        for (var frame : this.pending) {
+            if (frame.body != null) {
+                frame.body.close();
             }
+            if (frame.packet != null) {
+                frame.packet.release();
+            }
+        }
+        this.pending.clear();
+    }
 
-            packet.read(byteBuffer);
-            Packery.debug(Level.INFO, this.getClass(), "Read Packet: " + packet.getClass().getName());
-            channelHandlerContext.fireChannelRead(packet);
-        } catch (Exception exception) {
-            Packery.log(Level.SEVERE, this.getClass(), exception.getMessage());
+    private static final class PendingFrame {
+
+        private static final int WAITING = 0;
+        private static final int DECODING = 1;
+        private static final int DECODED = 2;
+
+        private final Class<? extends NettyPacket> packetClass;
+        private final byte flags;
+        private final UUID uniqueId;
+        private final boolean allowed;
+        private final int frameLength;
+        private Buffer body;
+        private NettyPacket packet;
+        private int state;
+
+        private PendingFrame(Class<? extends NettyPacket> packetClass, byte flags, UUID uniqueId, boolean allowed, int frameLength, Buffer body) {
+            this.packetClass = packetClass;
+            this.flags = flags;
+            this.uniqueId = uniqueId;
+            this.allowed = allowed;
+            this.frameLength = frameLength;
+            this.body = body;
         }
-        buffer.resetOffsets();
+    }
+
+    private static final class DecodeThreadFactory implements ThreadFactory {
+
+        private static final Executor EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new DecodeThreadFactory());
 
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            var thread = new Thread(runnable, "packery-decode-" + this.threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
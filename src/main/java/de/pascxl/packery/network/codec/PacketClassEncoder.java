@@ -26,8 +26,10 @@ package de.pascxl.packery.network.codec;
 
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.internal.NettyPacketOutAuthentication;
 import de.pascxl.packery.packet.NettyPacket;
 import de.pascxl.packery.packet.PacketManager;
+import de.pascxl.packery.packet.defaults.relay.RelayedNettyPacket;
 import io.netty5.buffer.Buffer;
 import io.netty5.channel.ChannelHandlerContext;
 import io.netty5.handler.codec.MessageToByteEncoder;
@@ -40,24 +42,56 @@ public class PacketClassEncoder extends MessageToByteEncoder<NettyPacket> {
 
     private final PacketManager packetManager;
     private final String providerName;
+    private final PacketCodecContext codecContext;
 
     @Override
     protected Buffer allocateBuffer(ChannelHandlerContext channelHandlerContext, NettyPacket nettyPacket) throws Exception {
-        return channelHandlerContext.bufferAllocator().allocate(0);
+        var allocator = channelHandlerContext.bufferAllocator();
+        var estimate = PacketSizeEstimator.estimate(nettyPacket);
+        if (nettyPacket.composeBuffers()) {
+            return allocator.compose(allocator.allocate(estimate).send());
+        }
+        return allocator.allocate(estimate);
     }
 
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, NettyPacket nettyPacket, Buffer buffer) throws Exception {
 
-        if (!this.packetManager.isPacketAllow(nettyPacket)) {
-            Packery.log(Level.SEVERE, this.getClass(), providerName + ": " + "The channel {0} tries to send a packet which is not allowed: PacketId: {1}", channelHandlerContext.channel().remoteAddress(), nettyPacket.getClass().getName());
-            return;
+        var relayed = nettyPacket instanceof RelayedNettyPacket relayedPacket ? relayedPacket : null;
+        var allocated = buffer.capacity();
+        var initialDefinitions = this.codecContext.definitions();
+        var byteBuffer = new ByteBuffer(buffer, this.codecContext);
+        if (relayed != null) {
+            byteBuffer.writePacketType(relayed.packetName());
+        } else {
+            byteBuffer.writePacketType(nettyPacket.getClass());
+        }
+
+        var flags = nettyPacket.uniqueId() != null ? PacketCodecContext.FLAG_UNIQUE_ID : 0;
+        var flagsOffset = buffer.writerOffset();
+        buffer.writeByte((byte) flags);
+        if (nettyPacket.uniqueId() != null) {
+            byteBuffer.writeUUID(nettyPacket.uniqueId());
         }
 
-        var byteBuffer = new ByteBuffer(buffer);
-        byteBuffer.writeString(nettyPacket.getClass().getName());
-        byteBuffer.writeUUID(nettyPacket.uniqueId() == null ? Packery.SYSTEM_UUID : nettyPacket.uniqueId());
-        nettyPacket.write(byteBuffer);
+        var definitions = this.codecContext.definitions();
+        try {
+            nettyPacket.write(byteBuffer);
+        } catch (RuntimeException exception) {
+            if (initialDefinitions != this.codecContext.definitions()) {
+                Packery.log(Level.SEVERE, this.getClass(), providerName + ": " + "Closing {0}, the failed packet {1} already defined codec state: {2}", channelHandlerContext.channel().remoteAddress(), nettyPacket.getClass().getName(), exception.getMessage());
+                channelHandlerContext.close();
+            }
+            throw exception;
+        }
+        if (definitions != this.codecContext.definitions()) {
+            buffer.setByte(flagsOffset, (byte) (flags | PacketCodecContext.FLAG_DEFINITIONS));
+        }
+
+        if (nettyPacket instanceof NettyPacketOutAuthentication authentication) {
+            this.codecContext.announce(authentication.packetTable());
+        }
+        PacketSizeEstimator.record(nettyPacket.getClass(), allocated, buffer.readableBytes());
         Packery.debug(Level.INFO, this.getClass(), "Write Packet: " + nettyPacket.getClass().getName() + ": bytes: " + buffer.readableBytes());
 
     }
@@ -0,0 +1,228 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.Packery;
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketManager;
+import de.pascxl.packery.packet.PacketRegistry;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.logging.Level;
+
+// Packet header: varint (id << 1 | definition), [class name], flags, [uniqueId], body
+// FLAG_DEFINITIONS bodies define ids or dictionary slots and have to be read even if the packet is dropped
+@Getter
+public class PacketCodecContext {
+
+    public static final byte FLAG_UNIQUE_ID = 0x01;
+    public static final byte FLAG_DEFINITIONS = 0x02;
+    public static final int TYPE_NAMES = 1024;
+
+    private final PacketManager packetManager;
+    private final BitSet announcedIds = new BitSet();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Class<? extends NettyPacket>[] remotePackets = new Class[1];
+    private final PacketDictionary dictionary;
+    private final PacketDictionary typeNames;
+    private final boolean readOnly;
+    private int definitions;
+
+    public PacketCodecContext(PacketManager packetManager) {
+        this.packetManager = packetManager;
+        this.dictionary = new PacketDictionary(packetManager.dictionarySize());
+        this.typeNames = new PacketDictionary(TYPE_NAMES);
+        this.readOnly = false;
+    }
+
+    private PacketCodecContext(PacketCodecContext context) {
+        this.packetManager = context.packetManager;
+        this.remotePackets = context.remotePackets.clone();
+        this.dictionary = context.dictionary.readOnlyCopy();
+        this.typeNames = context.typeNames.readOnlyCopy();
+        this.readOnly = true;
+    }
+
+    // state of the remote side as of now, for bodies decoded while the event loop keeps reading later frames
+    public PacketCodecContext readOnlyCopy() {
+        return new PacketCodecContext(this);
+    }
+
+    public void writePacketType(ByteBuffer out, Class<? extends NettyPacket> packetClass) {
+        var id = this.packetManager.packetRegistry().idOf(packetClass);
+        if (this.announcedIds.get(id)) {
+            out.writeVarInt(id << 1);
+            return;
+        }
+        out.writeVarInt(id << 1 | 1);
+        out.writeString(packetClass.getName());
+        this.announcedIds.set(id);
+        this.definitions++;
+    }
+
+    public void writePacketType(ByteBuffer out, String className) {
+        var packetClass = this.packetManager.packetRegistry().known(className);
+        if (packetClass != null) {
+            this.writePacketType(out, packetClass);
+            return;
+        }
+        out.writeVarInt(1);
+        out.writeString(className);
+    }
+
+    public Class<? extends NettyPacket> readPacketType(ByteBuffer in) throws ClassNotFoundException {
+        var header = in.readVarInt();
+        var id = header >>> 1;
+        if (id >= PacketRegistry.MAX_PACKET_ID) {
+            throw new IllegalStateException("Packet id " + id + " is out of range");
+        }
+        if ((header & 1) != 0) {
+            var packetClass = this.packetManager.packetRegistry().resolve(in.readString());
+            if (id != 0) {
+                this.remotePacket(id, packetClass);
+            }
+            return packetClass;
+        }
+        var packetClass = id < this.remotePackets.length ? this.remotePackets[id] : null;
+        if (packetClass == null) {
+            throw new IllegalStateException("Unknown packet id " + id);
+        }
+        return packetClass;
+    }
+
+    public void writeCachedString(ByteBuffer out, String value) {
+        this.writeCachedString(out, this.dictionary, value);
+    }
+
+    public String readCachedString(ByteBuffer in) {
+        return this.readCachedString(in, this.dictionary);
+    }
+
+    public void writeTypeName(ByteBuffer out, String value) {
+        this.writeCachedString(out, this.typeNames, value);
+    }
+
+    public String readTypeName(ByteBuffer in) {
+        return this.readCachedString(in, this.typeNames);
+    }
+
+    private void writeCachedString(ByteBuffer out, PacketDictionary dictionary, String value) {
+        if (!dictionary.enabled() || value.length() > PacketDictionary.MAX_ENTRY_LENGTH) {
+            out.writeVarInt(0);
+            out.writeString(value);
+            return;
+        }
+        if (this.writeReference(out, dictionary, value)) {
+            return;
+        }
+        out.writeString(value);
+    }
+
+    private String readCachedString(ByteBuffer in, PacketDictionary dictionary) {
+        var header = in.readVarInt();
+        if (header == 0) {
+            return in.readString();
+        }
+        if ((header & 1) != 0) {
+            var value = in.readString();
+            dictionary.store(header >>> 1, value);
+            return value;
+        }
+        if (dictionary.entry((header >>> 1) - 1) instanceof String value) {
+            return value;
+        }
+        throw new IllegalStateException("Dictionary slot " + ((header >>> 1) - 1) + " does not hold a string");
+    }
+
+    public void writeCachedUUID(ByteBuffer out, UUID value) {
+        if (!this.dictionary.enabled()) {
+            out.writeVarInt(0);
+            out.writeUUID(value);
+            return;
+        }
+        if (this.writeReference(out, this.dictionary, value)) {
+            return;
+        }
+        out.writeUUID(value);
+    }
+
+    public UUID readCachedUUID(ByteBuffer in) {
+        var header = in.readVarInt();
+        if (header == 0) {
+            return in.readUUID();
+        }
+        if ((header & 1) != 0) {
+            var value = in.readUUID();
+            this.dictionary.store(header >>> 1, value);
+            return value;
+        }
+        if (this.dictionary.entry((header >>> 1) - 1) instanceof UUID value) {
+            return value;
+        }
+        throw new IllegalStateException("Dictionary slot " + ((header >>> 1) - 1) + " does not hold a UUID");
+    }
+
+    private boolean writeReference(ByteBuffer out, PacketDictionary dictionary, Object value) {
+        var slot = dictionary.lookup(value);
+        if (slot >= 0) {
+            out.writeVarInt(slot + 1 << 1);
+            return true;
+        }
+        out.writeVarInt(dictionary.define(value) << 1 | 1);
+        this.definitions++;
+        return false;
+    }
+
+    public void announce(Collection<String> packetTable) {
+        this.announcedIds.set(1, packetTable.size() + 1);
+    }
+
+    public void remoteTable(Collection<String> packetTable) {
+        var id = 1;
+        for (var className : packetTable) {
+            try {
+                this.remotePacket(id, this.packetManager.packetRegistry().resolve(className));
+            } catch (ClassNotFoundException | ClassCastException exception) {
+                Packery.debug(Level.WARNING, this.getClass(), "Remote packet {0} ({1}) is not available: {2}", id, className, exception.getMessage());
+            }
+            id++;
+        }
+    }
+
+    private void remotePacket(int id, Class<? extends NettyPacket> packetClass) {
+        if (this.readOnly) {
+            throw new IllegalStateException("Packet id " + id + " cannot be defined by a body decoded off the event loop");
+        }
+        if (id >= this.remotePackets.length) {
+            this.remotePackets = Arrays.copyOf(this.remotePackets, Math.max(id + 1, this.remotePackets.length * 2));
+        }
+        this.remotePackets[id] = packetClass;
+    }
+}
@@ -0,0 +1,113 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Value header: varint 0 literal, slot << 1 | 1 literal stored in slot, (slot + 1) << 1 reference to a slot
+// Only the sender assigns and evicts slots, the receiver stores whatever it is told
+@Getter
+public class PacketDictionary {
+
+    public static final int MAX_SIZE = 1 << 16;
+    public static final int MAX_ENTRY_LENGTH = 256;
+
+    private final int capacity;
+    private final LinkedHashMap<Object, Integer> slots;
+    private final boolean readOnly;
+    private Object[] remoteEntries = new Object[16];
+    private long hits;
+    private long misses;
+
+    public PacketDictionary(int capacity) {
+        this.capacity = Math.max(0, Math.min(capacity, MAX_SIZE));
+        this.slots = new LinkedHashMap<>(16, 0.75f, true);
+        this.readOnly = false;
+    }
+
+    private PacketDictionary(PacketDictionary dictionary) {
+        this.capacity = dictionary.capacity;
+        this.slots = new LinkedHashMap<>(0);
+        this.readOnly = true;
+        this.remoteEntries = dictionary.remoteEntries.clone();
+    }
+
+    public PacketDictionary readOnlyCopy() {
+        return new PacketDictionary(this);
+    }
+
+    public boolean enabled() {
+        return this.capacity > 0;
+    }
+
+    public int lookup(Object value) {
+        var slot = this.slots.get(value);
+        if (slot != null) {
+            this.hits++;
+            return slot;
+        }
+        return -1;
+    }
+
+    public int define(Object value) {
+        this.misses++;
+        int slot;
+        if (this.slots.size() < this.capacity) {
+            slot = this.slots.size();
+        } else {
+            Iterator<Map.Entry<Object, Integer>> iterator = this.slots.entrySet().iterator();
+            slot = iterator.next().getValue();
+            iterator.remove();
+        }
+        this.slots.put(value, slot);
+        return slot;
+    }
+
+    public void store(int slot, Object value) {
+        if (this.readOnly) {
+            throw new IllegalStateException("Dictionary slot " + slot + " cannot be defined by a body decoded off the event loop");
+        }
+        if (slot < 0 || slot >= MAX_SIZE) {
+            throw new IllegalStateException("Dictionary slot " + slot + " is out of range");
+        }
+        if (slot >= this.remoteEntries.length) {
+            this.remoteEntries = Arrays.copyOf(this.remoteEntries, Math.max(slot + 1, this.remoteEntries.length * 2));
+        }
+        this.remoteEntries[slot] = value;
+    }
+
+    public Object entry(int slot) {
+        var value = slot >= 0 && slot < this.remoteEntries.length ? this.remoteEntries[slot] : null;
+        if (value == null) {
+            throw new IllegalStateException("Unknown dictionary slot " + slot);
+        }
+        return value;
+    }
+}
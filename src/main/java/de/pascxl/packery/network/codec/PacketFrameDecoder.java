@@ -0,0 +1,118 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import io.netty5.buffer.Buffer;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.handler.codec.ByteToMessageDecoder;
+import io.netty5.handler.codec.CorruptedFrameException;
+import io.netty5.handler.codec.TooLongFrameException;
+
+public class PacketFrameDecoder extends ByteToMessageDecoder {
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private final int maxFrameLength;
+
+    public PacketFrameDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public PacketFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext channelHandlerContext, Buffer buffer) throws Exception {
+        while (buffer.readableBytes() > 0) {
+            var readerOffset = buffer.readerOffset();
+            var headerLength = varIntLength(buffer, readerOffset, buffer.readableBytes());
+            if (headerLength == 0) {
+                return;
+            }
+            var length = getVarInt(buffer, readerOffset);
+            var batch = length == 0;
+            if (batch) {
+                var batchHeaderLength = varIntLength(buffer, readerOffset + headerLength, buffer.readableBytes() - headerLength);
+                if (batchHeaderLength == 0) {
+                    return;
+                }
+                length = getVarInt(buffer, readerOffset + headerLength);
+                headerLength += batchHeaderLength;
+            }
+
+            if (length < 0 || length > this.maxFrameLength) {
+                throw new TooLongFrameException("Frame length " + length + " exceeds " + this.maxFrameLength);
+            }
+            if (buffer.readableBytes() - headerLength < length) {
+                return;
+            }
+
+            buffer.skipReadableBytes(headerLength);
+            if (!batch) {
+                channelHandlerContext.fireChannelRead(buffer.readSplit(length));
+                continue;
+            }
+            try (var entries = buffer.readSplit(length)) {
+                while (entries.readableBytes() > 0) {
+                    var entryHeaderLength = varIntLength(entries, entries.readerOffset(), entries.readableBytes());
+                    var entryLength = entryHeaderLength == 0 ? -1 : getVarInt(entries, entries.readerOffset());
+                    if (entryLength <= 0 || entries.readableBytes() - entryHeaderLength < entryLength) {
+                        throw new CorruptedFrameException("Batch entry exceeds its batch frame");
+                    }
+                    entries.skipReadableBytes(entryHeaderLength);
+                    channelHandlerContext.fireChannelRead(entries.readSplit(entryLength));
+                }
+            }
+        }
+    }
+
+    private static int varIntLength(Buffer buffer, int offset, int readable) {
+        var length = 0;
+        byte read;
+        do {
+            if (length == readable) {
+                return 0;
+            }
+            if (length == 5) {
+                throw new CorruptedFrameException("Frame length varint is longer than 5 bytes");
+            }
+            read = buffer.getByte(offset + length++);
+        } while ((read & 0x80) != 0);
+        return length;
+    }
+
+    private static int getVarInt(Buffer buffer, int offset) {
+        var value = 0;
+        var shift = 0;
+        byte read;
+        do {
+            read = buffer.getByte(offset++);
+            value |= (read & 0x7F) << shift;
+            shift += 7;
+        } while ((read & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,180 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.CompositeBuffer;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.util.concurrent.Future;
+import io.netty5.util.concurrent.Promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Frame: varint length, payload. Batch: varint 0, varint length, entries (varint length, payload)
+public class PacketFrameEncoder implements ChannelHandler {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64 * 1024;
+    public static final int MAX_BATCH_SIZE = (1 << 21) - 1;
+    private static final int BATCH_HEADER = 4;
+
+    private final long flushWindowNanos;
+    private final int maxBatchSize;
+    private final Runnable flushTask;
+    private final List<Promise<Void>> promises = new ArrayList<>();
+    private ChannelHandlerContext context;
+    private Buffer batch;
+    private boolean flushScheduled;
+
+    public PacketFrameEncoder() {
+        this(0, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public PacketFrameEncoder(long flushWindowNanos, int maxBatchSize) {
+        if (maxBatchSize <= BATCH_HEADER || maxBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("maxBatchSize must be between " + (BATCH_HEADER + 1) + " and " + MAX_BATCH_SIZE);
+        }
+        this.flushWindowNanos = flushWindowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.flushTask = () -> {
+            this.flushScheduled = false;
+            if (this.context != null) {
+                this.writeBatch(this.context);
+                this.context.flush();
+            }
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext channelHandlerContext) {
+        this.context = channelHandlerContext;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext channelHandlerContext) {
+        this.context = null;
+        if (this.batch != null) {
+            this.batch.close();
+            this.batch = null;
+        }
+        var exception = new IllegalStateException("PacketFrameEncoder was removed before the batch was written");
+        this.promises.forEach(promise -> promise.tryFailure(exception));
+        this.promises.clear();
+    }
+
+    @Override
+    public Future<Void> write(ChannelHandlerContext channelHandlerContext, Object message) {
+        if (!(message instanceof Buffer buffer)) {
+            this.writeBatch(channelHandlerContext);
+            return channelHandlerContext.write(message);
+        }
+        var length = buffer.readableBytes();
+        if (length == 0) {
+            buffer.close();
+            return channelHandlerContext.newSucceededFuture();
+        }
+        var frameLength = ByteBuffer.varIntSize(length) + length;
+        // composed buffers are written as their own frame, copying them into the batch would undo the composition
+        if (this.flushWindowNanos < 0 || BATCH_HEADER + frameLength > this.maxBatchSize || CompositeBuffer.isComposite(buffer)) {
+            this.writeBatch(channelHandlerContext);
+            var header = channelHandlerContext.bufferAllocator().allocate(ByteBuffer.varIntSize(length));
+            new ByteBuffer(header).writeVarInt(length);
+            channelHandlerContext.write(header);
+            return channelHandlerContext.write(buffer);
+        }
+
+        if (this.batch != null && this.batch.readableBytes() + frameLength > this.maxBatchSize) {
+            this.writeBatch(channelHandlerContext);
+        }
+        if (this.batch == null) {
+            this.batch = channelHandlerContext.bufferAllocator().allocate(Math.min(this.maxBatchSize, Math.max(256, BATCH_HEADER + frameLength * 2)));
+            this.batch.skipWritableBytes(BATCH_HEADER);
+        }
+        this.batch.ensureWritable(frameLength, Math.min(this.batch.capacity(), this.maxBatchSize - this.batch.capacity()), false);
+        try (buffer) {
+            new ByteBuffer(this.batch).writeVarInt(length);
+            this.batch.writeBytes(buffer);
+        }
+        Promise<Void> promise = channelHandlerContext.newPromise();
+        this.promises.add(promise);
+        return promise.asFuture();
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext channelHandlerContext) {
+        if (this.batch == null) {
+            channelHandlerContext.flush();
+            return;
+        }
+        if (this.flushScheduled) {
+            return;
+        }
+        this.flushScheduled = true;
+        if (this.flushWindowNanos == 0) {
+            channelHandlerContext.executor().execute(this.flushTask);
+        } else {
+            channelHandlerContext.executor().schedule(this.flushTask, this.flushWindowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Future<Void> close(ChannelHandlerContext channelHandlerContext) {
+        if (this.batch != null) {
+            this.writeBatch(channelHandlerContext);
+            channelHandlerContext.flush();
+        }
+        return channelHandlerContext.close();
+    }
+
+    private void writeBatch(ChannelHandlerContext channelHandlerContext) {
+        var batch = this.batch;
+        if (batch == null) {
+            return;
+        }
+        this.batch = null;
+        List<Promise<Void>> promises = List.copyOf(this.promises);
+        this.promises.clear();
+
+        if (promises.size() == 1) {
+            batch.readerOffset(BATCH_HEADER);
+        } else {
+            var length = batch.readableBytes() - BATCH_HEADER;
+            batch.setByte(0, (byte) 0);
+            batch.setByte(1, (byte) (length & 0x7F | 0x80));
+            batch.setByte(2, (byte) (length >>> 7 & 0x7F | 0x80));
+            batch.setByte(3, (byte) (length >>> 14));
+        }
+        channelHandlerContext.write(batch).addListener(future -> {
+            if (future.isSuccess()) {
+                promises.forEach(promise -> promise.trySuccess(null));
+            } else {
+                promises.forEach(promise -> promise.tryFailure(future.cause()));
+            }
+        });
+    }
+}
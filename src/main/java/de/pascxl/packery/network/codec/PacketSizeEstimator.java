@@ -0,0 +1,125 @@
+package de.pascxl.packery.network.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.packet.NettyPacket;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class PacketSizeEstimator {
+
+    public static final int HEADER_ESTIMATE = 24;
+    private static final int WINDOW = 32;
+    private static final int RECALCULATE_RATE = 8;
+    private static final double PERCENTILE = 0.9;
+    private static final int MAX_ESTIMATE = PacketFrameDecoder.DEFAULT_MAX_FRAME_LENGTH;
+    private static final Map<Class<?>, Estimate> ESTIMATES = new ConcurrentHashMap<>(0);
+    private static final ClassValue<Estimate> CACHE = new ClassValue<>() {
+        @Override
+        protected Estimate computeValue(Class<?> type) {
+            var estimate = new Estimate(type);
+            ESTIMATES.put(type, estimate);
+            return estimate;
+        }
+    };
+
+    private PacketSizeEstimator() {
+    }
+
+    public static int estimate(NettyPacket nettyPacket) {
+        var estimatedSize = nettyPacket.estimatedSize();
+        if (estimatedSize >= 0) {
+            return Math.min(estimatedSize + HEADER_ESTIMATE, MAX_ESTIMATE);
+        }
+        return CACHE.get(nettyPacket.getClass()).estimate();
+    }
+
+    public static void record(Class<? extends NettyPacket> packetClass, int allocated, int encoded) {
+        CACHE.get(packetClass).record(allocated, encoded);
+    }
+
+    public static Collection<Statistics> statistics() {
+        Collection<Statistics> statistics = new ArrayList<>(ESTIMATES.size());
+        for (var estimate : ESTIMATES.values()) {
+            statistics.add(estimate.statistics());
+        }
+        return statistics;
+    }
+
+    public record Statistics(Class<?> packetClass, long encodes, int estimate, int lastSize, long maxSize, long reallocations) {
+    }
+
+    @Getter
+    private static final class Estimate {
+
+        private final Class<?> packetClass;
+        private final AtomicIntegerArray samples = new AtomicIntegerArray(WINDOW);
+        private final AtomicLong cursor = new AtomicLong();
+        private final LongAdder encodes = new LongAdder();
+        private final LongAdder reallocations = new LongAdder();
+        private volatile int estimate = HEADER_ESTIMATE;
+        private volatile int lastSize;
+        private final AtomicLong maxSize = new AtomicLong();
+
+        private Estimate(Class<?> packetClass) {
+            this.packetClass = packetClass;
+        }
+
+        private void record(int allocated, int encoded) {
+            this.encodes.increment();
+            if (encoded > allocated) {
+                this.reallocations.increment();
+            }
+            this.lastSize = encoded;
+            this.maxSize.accumulateAndGet(encoded, Math::max);
+            var position = this.cursor.getAndIncrement();
+            this.samples.set((int) position & (WINDOW - 1), encoded);
+            if (position < WINDOW || position % RECALCULATE_RATE == 0) {
+                this.recalculate((int) Math.min(position + 1, WINDOW));
+            }
+        }
+
+        private void recalculate(int count) {
+            var sorted = new int[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = this.samples.get(i);
+            }
+            Arrays.sort(sorted);
+            this.estimate = Math.min(Math.max(sorted[(int) ((count - 1) * PERCENTILE)], 1), MAX_ESTIMATE);
+        }
+
+        private Statistics statistics() {
+            return new Statistics(this.packetClass, this.encodes.sum(), this.estimate, this.lastSize, this.maxSize.get(), this.reallocations.sum());
+        }
+    }
+}
@@ -25,6 +25,7 @@ package de.pascxl.packery.packet;
  */
 
 import de.pascxl.packery.buffer.ByteBuffer;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -36,6 +37,9 @@ public abstract class NettyPacket {
 
 //    private long packetId;
     private UUID uniqueId;
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private transient PacketPool.Handle poolHandle;
 
 /*    public NettyPacket(long packetId) {
         this.packetId = packetId;
@@ -53,4 +57,32 @@ public abstract class NettyPacket {
 
     public abstract void read(ByteBuffer in);
 
+    public int estimatedSize() {
+        return -1;
+    }
+
+    public boolean composeBuffers() {
+        return false;
+    }
+
+    public NettyPacket retain() {
+        if (this.poolHandle != null) {
+            this.poolHandle.retain();
+        }
+        return this;
+    }
+
+    public boolean release() {
+        return this.poolHandle != null && this.poolHandle.release(this);
+    }
+
+    public void detach() {
+        if (this.poolHandle != null) {
+            this.poolHandle.detach();
+        }
+    }
+
+    protected void deallocate() {
+    }
+
 }
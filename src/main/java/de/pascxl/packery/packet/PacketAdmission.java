@@ -0,0 +1,85 @@
+package de.pascxl.packery.packet;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+// Immutable bitset of allowed PacketRegistry ids, swapped as a whole on every change
+public final class PacketAdmission {
+
+    static final PacketAdmission EMPTY = new PacketAdmission(new long[0], false);
+
+    private final long[] bits;
+    private final boolean bypass;
+
+    private PacketAdmission(long[] bits, boolean bypass) {
+        this.bits = bits;
+        this.bypass = bypass;
+    }
+
+    public boolean allows(int id) {
+        return this.bypass || this.contains(id);
+    }
+
+    public boolean contains(int id) {
+        var index = id >>> 6;
+        return id > 0 && index < this.bits.length && (this.bits[index] & (1L << id)) != 0;
+    }
+
+    public boolean bypass() {
+        return this.bypass;
+    }
+
+    PacketAdmission with(int id, boolean bypass) {
+        if (this.contains(id)) {
+            return this;
+        }
+        var bits = Arrays.copyOf(this.bits, Math.max(this.bits.length, (id >>> 6) + 1));
+        bits[id >>> 6] |= 1L << id;
+        return new PacketAdmission(bits, this.bypass || bypass);
+    }
+
+    PacketAdmission without(int id, boolean bypass) {
+        if (!this.contains(id)) {
+            return this;
+        }
+        var bits = this.bits.clone();
+        bits[id >>> 6] &= ~(1L << id);
+        return new PacketAdmission(bits, this.bypass && !bypass);
+    }
+
+    int[] ids() {
+        var ids = new int[Arrays.stream(this.bits).mapToInt(Long::bitCount).sum()];
+        var count = 0;
+        for (int index = 0; index < this.bits.length; index++) {
+            var word = this.bits[index];
+            while (word != 0) {
+                ids[count++] = (index << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+}
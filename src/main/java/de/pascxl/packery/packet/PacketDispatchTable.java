@@ -0,0 +1,217 @@
+package de.pascxl.packery.packet;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import de.pascxl.packery.Packery;
+import de.pascxl.packery.packet.listener.ExecutionPolicy;
+import de.pascxl.packery.packet.listener.PacketHandler;
+import de.pascxl.packery.packet.listener.PacketReceiveListener;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+// Immutable snapshot of the listener registrations, swapped as a whole on every change
+final class PacketDispatchTable {
+
+    static final Registration[] NONE = new Registration[0];
+
+    private static final ClassValue<Registration> FACTORIES = new ClassValue<>() {
+        @Override
+        protected Registration computeValue(Class<?> type) {
+            return Registration.of(type);
+        }
+    };
+
+    private final PacketRegistry registry;
+    private final Map<String, Registration[]> handlers;
+    private final Registration[][] byId;
+
+    private PacketDispatchTable(PacketRegistry registry, Map<String, Registration[]> handlers) {
+        this.registry = registry;
+        this.handlers = handlers;
+        var byId = new Registration[registry.size() + 1][];
+        handlers.forEach((packetId, registrations) -> {
+            var packetClass = registry.known(packetId);
+            var id = packetClass != null ? registry.id(packetClass) : 0;
+            if (id > 0 && id < byId.length) {
+                byId[id] = registrations;
+            }
+        });
+        this.byId = byId;
+    }
+
+    static PacketDispatchTable empty(PacketRegistry registry) {
+        return new PacketDispatchTable(registry, Map.of());
+    }
+
+    Registration[] handlers(Class<?> packetClass) {
+        var id = this.registry.id(packetClass);
+        if (id > 0 && id < this.byId.length) {
+            var registrations = this.byId[id];
+            return registrations != null ? registrations : NONE;
+        }
+        // registered with the registry after this table was built
+        return this.handlers.getOrDefault(packetClass.getName(), NONE);
+    }
+
+    boolean contains(String packetId) {
+        return this.handlers.containsKey(packetId);
+    }
+
+    PacketDispatchTable with(String packetId, Class<? extends PacketReceiveListener<?>> listenerClass, ExecutionPolicy policy) {
+        var factory = FACTORIES.get(listenerClass);
+        return this.with(packetId, policy == ExecutionPolicy.INLINE ? factory : new Registration(listenerClass, null, factory.supplier(), policy));
+    }
+
+    PacketDispatchTable with(String packetId, PacketHandler<?> handler, ExecutionPolicy policy) {
+        return this.with(packetId, new Registration(null, handler, null, policy));
+    }
+
+    PacketDispatchTable without(String packetId, Class<? extends PacketReceiveListener<?>> listenerClass) {
+        return this.without(packetId, registration -> registration.listenerClass() == listenerClass);
+    }
+
+    PacketDispatchTable without(String packetId, PacketHandler<?> handler) {
+        return this.without(packetId, registration -> registration.handler() == handler);
+    }
+
+    private PacketDispatchTable with(String packetId, Registration registration) {
+        var handlers = new HashMap<>(this.handlers);
+        var current = handlers.getOrDefault(packetId, NONE);
+        var extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = registration;
+        handlers.put(packetId, extended);
+        return new PacketDispatchTable(this.registry, Map.copyOf(handlers));
+    }
+
+    private PacketDispatchTable without(String packetId, Predicate<Registration> filter) {
+        var current = this.handlers.get(packetId);
+        if (current == null) {
+            return this;
+        }
+        var index = 0;
+        while (index < current.length && !filter.test(current[index])) {
+            index++;
+        }
+        if (index == current.length) {
+            return this;
+        }
+        var remaining = new Registration[current.length - 1];
+        System.arraycopy(current, 0, remaining, 0, index);
+        System.arraycopy(current, index + 1, remaining, index, remaining.length - index);
+        var handlers = new HashMap<>(this.handlers);
+        if (remaining.length == 0) {
+            handlers.remove(packetId);
+        } else {
+            handlers.put(packetId, remaining);
+        }
+        return new PacketDispatchTable(this.registry, Map.copyOf(handlers));
+    }
+
+    Map<String, List<Class<? extends PacketReceiveListener<?>>>> listenerClasses() {
+        Map<String, List<Class<? extends PacketReceiveListener<?>>>> listenerClasses = new HashMap<>(this.handlers.size());
+        this.handlers.forEach((packetId, registrations) -> {
+            var classes = Arrays.stream(registrations)
+                    .map(Registration::listenerClass)
+                    .filter(Objects::nonNull)
+                    .<Class<? extends PacketReceiveListener<?>>>map(listenerClass -> listenerClass)
+                    .toList();
+            if (!classes.isEmpty()) {
+                listenerClasses.put(packetId, classes);
+            }
+        });
+        return Collections.unmodifiableMap(listenerClasses);
+    }
+
+    Set<ExecutionPolicy> policies() {
+        Set<ExecutionPolicy> policies = new LinkedHashSet<>();
+        this.handlers.values().forEach(registrations -> Arrays.stream(registrations).map(Registration::policy).forEach(policies::add));
+        return policies;
+    }
+
+    record Registration(Class<? extends PacketReceiveListener<?>> listenerClass, PacketHandler<?> handler, Supplier<Object> supplier, ExecutionPolicy policy) {
+
+        @SuppressWarnings("unchecked")
+        <P extends NettyPacket> PacketReceiveListener<P> create() {
+            try {
+                return (PacketReceiveListener<P>) this.supplier.get();
+            } catch (RuntimeException exception) {
+                Packery.log(Level.SEVERE, PacketDispatchTable.class, "Cannot create listener {0}: {1}", this.listenerClass.getName(), exception.getMessage());
+                return null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Registration of(Class<?> type) {
+            var listenerClass = (Class<? extends PacketReceiveListener<?>>) type;
+            if (Modifier.isAbstract(type.getModifiers())) {
+                return new Registration(listenerClass, null, () -> {
+                    throw new IllegalStateException(type.getName() + " is abstract");
+                }, ExecutionPolicy.INLINE);
+            }
+            try {
+                var lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                var constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+                try {
+                    var callSite = LambdaMetafactory.metafactory(
+                            lookup,
+                            "get",
+                            MethodType.methodType(Supplier.class),
+                            MethodType.methodType(Object.class),
+                            constructor,
+                            MethodType.methodType(type));
+                    return new Registration(listenerClass, null, (Supplier<Object>) callSite.getTarget().invoke(), ExecutionPolicy.INLINE);
+                } catch (Throwable throwable) {
+                    Packery.debug(Level.WARNING, PacketDispatchTable.class, "Cannot generate factory for {0}: {1}", type.getName(), throwable.getMessage());
+                }
+                return new Registration(listenerClass, null, () -> {
+                    try {
+                        return constructor.invoke();
+                    } catch (Throwable throwable) {
+                        throw new IllegalStateException("Cannot instantiate " + type.getName(), throwable);
+                    }
+                }, ExecutionPolicy.INLINE);
+            } catch (IllegalAccessException | NoSuchMethodException exception) {
+                return new Registration(listenerClass, null, () -> {
+                    throw new IllegalStateException("No accessible no-argument constructor: " + exception.getMessage());
+                }, ExecutionPolicy.INLINE);
+            }
+        }
+    }
+}
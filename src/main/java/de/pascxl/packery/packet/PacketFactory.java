@@ -0,0 +1,166 @@
+package de.pascxl.packery.packet;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.golgolex.quala.reflections.Allocator;
+import de.pascxl.packery.Packery;
+import de.pascxl.packery.packet.codec.PacketCodecs;
+import lombok.Getter;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+public final class PacketFactory {
+
+    private static final int SAMPLE_RATE = 64;
+    private static final Map<Class<?>, Instantiator> INSTANTIATORS = new ConcurrentHashMap<>(0);
+    private static final ClassValue<Instantiator> CACHE = new ClassValue<>() {
+        @Override
+        protected Instantiator computeValue(Class<?> type) {
+            var instantiator = Instantiator.of(type);
+            INSTANTIATORS.put(type, instantiator);
+            return instantiator;
+        }
+    };
+
+    private PacketFactory() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <P extends NettyPacket> P create(Class<P> packetClass) {
+        return (P) CACHE.get(packetClass).create();
+    }
+
+    public static <P extends NettyPacket> P createPooled(Class<P> packetClass) {
+        var packet = PacketPool.acquire(packetClass);
+        return packet != null ? packet : create(packetClass);
+    }
+
+    public static Collection<Statistics> statistics() {
+        Collection<Statistics> statistics = new ArrayList<>(INSTANTIATORS.size());
+        for (var instantiator : INSTANTIATORS.values()) {
+            statistics.add(instantiator.statistics());
+        }
+        return statistics;
+    }
+
+    public record Statistics(Class<?> packetClass, Strategy strategy, long instances, long averageNanos) {
+    }
+
+    public enum Strategy {
+        CODEC,
+        GENERATED,
+        METHOD_HANDLE,
+        UNSAFE,
+        UNSUPPORTED
+    }
+
+    @Getter
+    private static final class Instantiator {
+
+        private final Class<?> packetClass;
+        private final Strategy strategy;
+        private final Supplier<Object> supplier;
+        private final LongAdder instances = new LongAdder();
+        private final LongAdder sampledInstances = new LongAdder();
+        private final LongAdder sampledNanos = new LongAdder();
+
+        private Instantiator(Class<?> packetClass, Strategy strategy, Supplier<Object> supplier) {
+            this.packetClass = packetClass;
+            this.strategy = strategy;
+            this.supplier = supplier;
+        }
+
+        private Object create() {
+            this.instances.increment();
+            if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+                return this.supplier.get();
+            }
+            var start = System.nanoTime();
+            var instance = this.supplier.get();
+            this.sampledNanos.add(System.nanoTime() - start);
+            this.sampledInstances.increment();
+            return instance;
+        }
+
+        private Statistics statistics() {
+            var sampled = this.sampledInstances.sum();
+            return new Statistics(this.packetClass, this.strategy, this.instances.sum(), sampled == 0 ? 0 : this.sampledNanos.sum() / sampled);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Instantiator of(Class<?> type) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                return new Instantiator(type, Strategy.UNSUPPORTED, () -> null);
+            }
+            var codec = NettyPacket.class.isAssignableFrom(type) ? PacketCodecs.codec((Class<? extends NettyPacket>) type) : null;
+            if (codec != null) {
+                return new Instantiator(type, Strategy.CODEC, codec::create);
+            }
+            // unlike the former unsafe allocation this runs the no-arg constructor and field initializers
+            try {
+                type.getDeclaredConstructor();
+            } catch (NoSuchMethodException exception) {
+                return new Instantiator(type, Strategy.UNSAFE, () -> Allocator.unsafeAllocation(type));
+            }
+            try {
+                var lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                var constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+                try {
+                    var callSite = LambdaMetafactory.metafactory(
+                            lookup,
+                            "get",
+                            MethodType.methodType(Supplier.class),
+                            MethodType.methodType(Object.class),
+                            constructor,
+                            MethodType.methodType(type));
+                    return new Instantiator(type, Strategy.GENERATED, (Supplier<Object>) callSite.getTarget().invoke());
+                } catch (Throwable throwable) {
+                    Packery.debug(Level.WARNING, PacketFactory.class, "Cannot generate factory for {0}: {1}", type.getName(), throwable.getMessage());
+                }
+                return new Instantiator(type, Strategy.METHOD_HANDLE, () -> {
+                    try {
+                        return constructor.invoke();
+                    } catch (Throwable throwable) {
+                        throw new IllegalStateException("Cannot instantiate " + type.getName(), throwable);
+                    }
+                });
+            } catch (IllegalAccessException | NoSuchMethodException exception) {
+                Packery.debug(Level.WARNING, PacketFactory.class, "Cannot access constructor of {0}: {1}", type.getName(), exception.getMessage());
+                return new Instantiator(type, Strategy.UNSAFE, () -> Allocator.unsafeAllocation(type));
+            }
+        }
+    }
+}
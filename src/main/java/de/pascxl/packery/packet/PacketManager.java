@@ -25,42 +25,91 @@ package de.pascxl.packery.packet;
  */
 
 import de.pascxl.packery.Packery;
+import de.pascxl.packery.internal.NettyPacketOutAllowedPackets;
 import de.pascxl.packery.internal.NettyPacketOutAuthentication;
 import de.pascxl.packery.internal.NettyPacketOutChannelStayActive;
 import de.pascxl.packery.internal.NettyPacketOutIdentityActive;
 import de.pascxl.packery.internal.NettyPacketOutIdentityInactive;
 import de.pascxl.packery.network.ChannelIdentity;
+import de.pascxl.packery.network.codec.PacketClassDecoder;
+import de.pascxl.packery.network.codec.PacketFrameEncoder;
+import de.pascxl.packery.packet.defaults.relay.RelayedNettyPacket;
+import de.pascxl.packery.packet.defaults.relay.RoutingNettyPacket;
 import de.pascxl.packery.packet.defaults.relay.RoutingResultReplyPacket;
 import de.pascxl.packery.packet.defaults.request.RespondNettyPacket;
+import de.pascxl.packery.packet.codec.PacketCodecs;
+import de.pascxl.packery.packet.flyweight.FlyweightHandler;
+import de.pascxl.packery.packet.flyweight.FlyweightPacket;
+import de.pascxl.packery.packet.listener.ExecutionPolicy;
+import de.pascxl.packery.packet.listener.PacketContext;
+import de.pascxl.packery.packet.listener.PacketHandler;
 import de.pascxl.packery.packet.listener.PacketReceiveListener;
+import de.pascxl.packery.packet.listener.StripedDispatcher;
 import de.pascxl.packery.packet.query.PacketQuery;
+import de.pascxl.packery.packet.record.RecordCodec;
+import de.pascxl.packery.packet.record.RecordNettyPacket;
 import de.pascxl.packery.packet.router.PacketRouter;
 import de.pascxl.packery.packet.sender.PacketSender;
 import de.pascxl.packery.utils.BypassCheck;
 import io.netty5.channel.ChannelHandlerContext;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 @Getter
 public class PacketManager {
 
     //    private final Map<Long, Collection<Class<? extends PacketReceiveListener<?>>>> packetHandlers = new ConcurrentHashMap<>(0);
-    private final Map<String, Collection<Class<? extends PacketReceiveListener<?>>>> packetHandlers = new ConcurrentHashMap<>(0);
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<PacketDispatchTable> dispatchTable;
+    private final Map<Class<?>, FlyweightHandler<?>[]> flyweightHandlers = new ConcurrentHashMap<>(0);
     //    private final Collection<Long> allowedPacketIds = new ArrayList<>();
-    private final Collection<String> allowedPackets = new ArrayList<>();
+    private volatile PacketAdmission admission = PacketAdmission.EMPTY;
+    @Getter(AccessLevel.NONE)
+    private final Collection<PacketSender> peers = new CopyOnWriteArrayList<>();
+    private final PacketRegistry packetRegistry = new PacketRegistry();
     private final PacketQuery packetQuery;
     private final PacketRouter packetRouter;
+    @Setter
+    private volatile int dictionarySize;
+    @Setter
+    private volatile boolean batchDelivery;
+    @Setter
+    private volatile boolean lazyJsonDecoding;
+    @Setter
+    private volatile int offloadThreshold = PacketClassDecoder.DEFAULT_OFFLOAD_THRESHOLD;
+    @Setter
+    private volatile Executor decodeExecutor = PacketClassDecoder.DECODE_EXECUTOR;
+    @Setter
+    private volatile long flushWindowNanos;
+    @Setter
+    private volatile int maxBatchSize = PacketFrameEncoder.DEFAULT_MAX_BATCH_SIZE;
+    @Setter
+    private volatile StripedDispatcher dispatcher;
 
     public PacketManager() {
+        this.dispatchTable = new AtomicReference<>(PacketDispatchTable.empty(this.packetRegistry));
         this.packetQuery = new PacketQuery(this);
         this.packetRouter = new PacketRouter();
+        this.registerPacket(RoutingNettyPacket.class);
+        this.registerPacket(RoutingResultReplyPacket.class);
+        PacketCodecs.codecs().forEach(codec -> this.registerPacket(codec.packetClass()));
         this.allowPacket(NettyPacketOutAuthentication.class);
+        this.allowPacket(NettyPacketOutAllowedPackets.class);
         this.allowPacket(NettyPacketOutChannelStayActive.class);
         this.allowPacket(NettyPacketOutIdentityActive.class);
         this.allowPacket(NettyPacketOutIdentityInactive.class);
@@ -68,98 +117,383 @@ public class PacketManager {
         this.allowPacket(RespondNettyPacket.class);
     }
 
+    public int registerPacket(Class<? extends NettyPacket> clazz) {
+        return this.packetRegistry.register(clazz);
+    }
+
+    public void registerRecord(Class<? extends Record> recordType) {
+        RecordCodec.register(recordType);
+        this.allowPacket(RecordNettyPacket.class);
+    }
+
     public <P extends NettyPacket> boolean registerPacketHandler(String packetId, Class<? extends PacketReceiveListener<P>> handler) {
-        if (!this.packetHandlers.containsKey(packetId)) {
-            this.packetHandlers.put(packetId, new ArrayList<>());
-        }
-        this.packetHandlers.get(packetId).add(handler);
+        return this.registerPacketHandler(packetId, handler, ExecutionPolicy.INLINE);
+    }
+
+    public <P extends NettyPacket> boolean registerPacketHandler(String packetId, Class<? extends PacketReceiveListener<P>> handler, @NonNull ExecutionPolicy policy) {
+        this.dispatchTable.updateAndGet(table -> table.with(packetId, handler, policy));
         return true;
     }
 
     public <P extends NettyPacket> boolean unregisterPacketHandler(String packetId, Class<? extends PacketReceiveListener<P>> handler) {
-        if (!this.packetHandlers.containsKey(packetId)) {
+        if (!this.dispatchTable.get().contains(packetId)) {
             return false;
         }
-        Collection<Class<? extends PacketReceiveListener<?>>> handlers = this.packetHandlers.get(packetId);
-        handlers.remove(handler);
-        if (handlers.isEmpty()) {
-            this.packetHandlers.remove(packetId);
-        }
+        this.dispatchTable.updateAndGet(table -> table.without(packetId, handler));
         return true;
     }
 
+    public <P extends NettyPacket> void registerHandler(Class<P> packetClass, PacketHandler<? super P> handler) {
+        this.registerHandler(packetClass, handler, ExecutionPolicy.INLINE);
+    }
+
+    public <P extends NettyPacket> void registerHandler(Class<P> packetClass, PacketHandler<? super P> handler, @NonNull ExecutionPolicy policy) {
+        this.packetRegistry.idOf(packetClass);
+        this.dispatchTable.updateAndGet(table -> table.with(packetClass.getName(), handler, policy));
+    }
+
+    public <P extends NettyPacket> boolean unregisterHandler(Class<P> packetClass, PacketHandler<? super P> handler) {
+        var removed = new boolean[1];
+        this.dispatchTable.updateAndGet(table -> {
+            var updated = table.without(packetClass.getName(), handler);
+            removed[0] = updated != table;
+            return updated;
+        });
+        return removed[0];
+    }
+
+    public Map<String, List<Class<? extends PacketReceiveListener<?>>>> packetHandlers() {
+        return this.dispatchTable.get().listenerClasses();
+    }
+
+    public List<ExecutionPolicy.Statistics> executionStatistics() {
+        return this.dispatchTable.get().policies().stream().filter(policy -> !policy.inline()).map(ExecutionPolicy::statistics).toList();
+    }
+
+    public <F extends FlyweightPacket> void registerFlyweightHandler(Class<F> packetClass, FlyweightHandler<? super F> handler) {
+        this.flyweightHandlers.compute(packetClass, (key, handlers) -> {
+            if (handlers == null) {
+                return new FlyweightHandler<?>[]{handler};
+            }
+            var extended = Arrays.copyOf(handlers, handlers.length + 1);
+            extended[handlers.length] = handler;
+            return extended;
+        });
+    }
+
+    public <F extends FlyweightPacket> boolean unregisterFlyweightHandler(Class<F> packetClass, FlyweightHandler<? super F> handler) {
+        var removed = new boolean[1];
+        this.flyweightHandlers.computeIfPresent(packetClass, (key, handlers) -> {
+            var remaining = Arrays.stream(handlers).filter(candidate -> candidate != handler).toArray(FlyweightHandler<?>[]::new);
+            removed[0] = remaining.length != handlers.length;
+            return remaining.length == 0 ? null : remaining;
+        });
+        return removed[0];
+    }
+
+    // legacy API, allocates the collection and one listener per registration, dispatch itself goes through callHandlers
+    @Deprecated
     public <P extends NettyPacket> Collection<PacketReceiveListener<P>> collectHandlers(P packet) {
-        Collection<PacketReceiveListener<P>> handlers = new LinkedList<>();
-        if (packetHandlers.containsKey(packet.getClass().getName())) {
-            for (Class<? extends PacketReceiveListener<?>> aClass : packetHandlers.get(packet.getClass().getName())) {
-                try {
-                    handlers.add((PacketReceiveListener<P>) aClass.newInstance());
-                } catch (InstantiationException | IllegalAccessException | ClassCastException exception) {
-                    Packery.log(Level.SEVERE, this.getClass(), exception.getMessage());
-                }
+        Collection<PacketReceiveListener<P>> handlers = new ArrayList<>();
+        for (var registration : this.dispatchTable.get().handlers(packet.getClass())) {
+            if (registration.handler() != null) {
+                continue;
+            }
+            PacketReceiveListener<P> listener = registration.create();
+            if (listener != null) {
+                handlers.add(listener);
             }
         }
         return handlers;
     }
 
     public <P extends NettyPacket> int callHandlers(P packet, PacketSender packetSender, ChannelHandlerContext channelHandlerContext) {
+        return this.callHandlers(packet, this.dispatchTable.get().handlers(packet.getClass()), packetSender, channelHandlerContext);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P extends NettyPacket> int callHandlers(P packet, PacketDispatchTable.Registration[] registrations, PacketSender packetSender, ChannelHandlerContext channelHandlerContext) {
         var calledCount = 0;
-        for (var listener : this.collectHandlers(packet)) {
+        PacketContext context = null;
+        for (var registration : registrations) {
+            var handler = (PacketHandler<P>) registration.handler();
+            if (handler != null) {
+                if (context == null) {
+                    context = new PacketContext(packet.uniqueId(), packet.getClass().getName(), packetSender, channelHandlerContext);
+                }
+                calledCount++;
+                if (registration.policy().inline()) {
+                    handler.handle(packet, context);
+                } else {
+                    var handlerContext = context;
+                    this.execute(registration.policy(), packet, channelHandlerContext, offloaded -> handler.handle(offloaded, handlerContext));
+                }
+                continue;
+            }
+            PacketReceiveListener<P> listener = registration.create();
+            if (listener == null) {
+                continue;
+            }
             calledCount++;
             if (packet.uniqueId() != null) {
                 listener.uniqueId(packet.uniqueId());
             }
             listener.packetId(packet.getClass().getName());
-            listener.call(packet, packetSender, channelHandlerContext);
+            if (registration.policy().inline()) {
+                listener.call(packet, packetSender, channelHandlerContext);
+            } else {
+                this.execute(registration.policy(), packet, channelHandlerContext, offloaded -> listener.call(offloaded, packetSender, channelHandlerContext));
+            }
         }
         return calledCount;
     }
 
-    public void allowPacket(Class<? extends NettyPacket> clazz) {
-        if (!this.allowedPackets.contains(clazz.getName())) {
-            this.allowedPackets.add(clazz.getName());
+    @SuppressWarnings("unchecked")
+    private <P extends NettyPacket> void execute(ExecutionPolicy policy, P packet, ChannelHandlerContext channelHandlerContext, Consumer<P> call) {
+        // flyweight views are reused by the decoder once dispatch returns, pooled packets stay retained until the call is done
+        var offloaded = packet instanceof FlyweightPacket flyweight ? (P) flyweight.copy() : (P) packet.retain();
+        policy.execute(() -> {
+            try {
+                call.accept(offloaded);
+            } catch (RuntimeException exception) {
+                Packery.log(Level.SEVERE, this.getClass(), "Handler for {0} failed on {1}: {2}", offloaded.getClass().getName(), policy.name(), exception.getMessage());
+            } finally {
+                offloaded.release();
+            }
+        }, channelHandlerContext != null ? channelHandlerContext.channel() : null);
+    }
+
+    public synchronized void allowPacket(Class<? extends NettyPacket> clazz) {
+        var admission = this.admission.with(this.registerPacket(clazz), clazz == BypassCheck.class);
+        if (admission != this.admission) {
+            this.admission = admission;
+            this.announce(true, clazz);
+        }
+    }
+
+    public synchronized void disAllowPacket(Class<? extends NettyPacket> clazz) {
+        var admission = this.admission.without(this.packetRegistry.id(clazz), clazz == BypassCheck.class);
+        if (admission != this.admission) {
+            this.admission = admission;
+            this.announce(false, clazz);
         }
     }
 
-    public void disAllowPacket(Class<? extends NettyPacket> clazz) {
-        this.allowedPackets.remove(clazz.getName());
+    private void announce(boolean allowed, Class<? extends NettyPacket> clazz) {
+        for (var peer : this.peers) {
+            peer.sendPacket(new NettyPacketOutAllowedPackets(allowed, List.of(clazz.getName())));
+        }
+    }
+
+    public void addPeer(PacketSender packetSender) {
+        this.peers.add(packetSender);
+    }
+
+    public void removePeer(PacketSender packetSender) {
+        this.peers.remove(packetSender);
+    }
+
+    public PacketAdmission remoteAdmission(PacketAdmission admission, Collection<String> packets, boolean allowed) {
+        for (var packetId : packets) {
+            Class<? extends NettyPacket> packetClass;
+            try {
+                packetClass = this.packetRegistry.resolve(packetId);
+            } catch (ClassNotFoundException | ClassCastException exception) {
+                continue;
+            }
+            var id = this.packetRegistry.idOf(packetClass);
+            admission = allowed ? admission.with(id, packetClass == BypassCheck.class) : admission.without(id, packetClass == BypassCheck.class);
+        }
+        return admission;
+    }
+
+    public PacketAdmission remoteAdmission(Collection<String> packets) {
+        return this.remoteAdmission(PacketAdmission.EMPTY, packets, true);
+    }
+
+    public boolean isPacketAccepted(PacketAdmission remoteAdmission, NettyPacket packet) {
+        if (remoteAdmission == null) {
+            return true;
+        }
+        // the peer accepts answers to its own queries regardless of its allow list, our own queries are waiting here
+        if (packet.uniqueId() != null && !this.packetQuery.waiting().containsKey(packet.uniqueId())) {
+            return true;
+        }
+        if (packet instanceof RelayedNettyPacket relayed) {
+            var packetClass = this.packetRegistry.known(relayed.packetName());
+            return packetClass != null ? remoteAdmission.allows(this.packetRegistry.id(packetClass)) : remoteAdmission.bypass();
+        }
+        return remoteAdmission.allows(this.packetRegistry.id(packet.getClass()));
+    }
+
+    public List<String> allowedPackets() {
+        var ids = this.admission.ids();
+        List<String> allowedPackets = new ArrayList<>(ids.length);
+        for (var id : ids) {
+            allowedPackets.add(this.packetRegistry.packetClass(id).getName());
+        }
+        return allowedPackets;
     }
 
     public <P extends NettyPacket> void call(P packet, PacketSender packetSender, ChannelHandlerContext channelHandlerContext, ChannelIdentity authentication) {
-        Packery.debug(Level.INFO, this.getClass(), "Received Packet [Packet=" + packet.getClass().getName() + ";uuid=" +
-                packet.uniqueId() + "] from " + authentication.namespace() + "#" + authentication.uniqueId());
+        if (packet instanceof FlyweightPacket flyweight) {
+            this.callFlyweight(flyweight, packetSender, channelHandlerContext, authentication);
+            return;
+        }
+        if (Packery.DEV_MODE) {
+            Packery.debug(Level.INFO, this.getClass(), "Received Packet [Packet=" + packet.getClass().getName() + ";uuid=" +
+                    packet.uniqueId() + "] from " + authentication.namespace() + "#" + authentication.uniqueId());
+        }
 
+        this.dispatchWaiting(packet);
+        var dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            this.dispatch(dispatcher, packet, this.dispatchTable.get().handlers(packet.getClass()), packetSender, channelHandlerContext, authentication);
+            return;
+        }
+        // a failing handler is logged the same way in batch and single delivery
+        try {
+            callHandlers(packet, packetSender, channelHandlerContext);
+        } catch (RuntimeException exception) {
+            Packery.log(Level.SEVERE, this.getClass(), "Handler for {0} failed: {1}", packet.getClass().getName(), exception.getMessage());
+        } finally {
+            packet.release();
+        }
+    }
+
+    public void call(List<? extends NettyPacket> packets, PacketSender packetSender, ChannelHandlerContext channelHandlerContext, ChannelIdentity authentication) {
+        if (Packery.DEV_MODE) {
+            Packery.debug(Level.INFO, this.getClass(), "Received " + packets.size() + " Packets from " + authentication.namespace() + "#" + authentication.uniqueId());
+        }
+
+        var table = this.dispatchTable.get();
+        var dispatcher = this.dispatcher;
+        Class<?> packetClass = null;
+        var registrations = PacketDispatchTable.NONE;
+        for (var index = 0; index < packets.size(); index++) {
+            var packet = packets.get(index);
+            if (packet instanceof FlyweightPacket flyweight) {
+                this.callFlyweight(flyweight, packetSender, channelHandlerContext, authentication);
+                continue;
+            }
+            if (packet.getClass() != packetClass) {
+                packetClass = packet.getClass();
+                registrations = table.handlers(packetClass);
+            }
+            this.dispatchWaiting(packet);
+            if (dispatcher != null) {
+                this.dispatch(dispatcher, packet, registrations, packetSender, channelHandlerContext, authentication);
+                continue;
+            }
+            try {
+                callHandlers(packet, registrations, packetSender, channelHandlerContext);
+            } catch (RuntimeException exception) {
+                Packery.log(Level.SEVERE, this.getClass(), "Handler for {0} failed: {1}", packetClass.getName(), exception.getMessage());
+            } finally {
+                packet.release();
+            }
+        }
+    }
+
+    private void dispatch(StripedDispatcher dispatcher, NettyPacket packet, PacketDispatchTable.Registration[] registrations, PacketSender packetSender, ChannelHandlerContext channelHandlerContext, ChannelIdentity authentication) {
+        if (registrations.length == 0) {
+            packet.release();
+            return;
+        }
+        try {
+            dispatcher.dispatch(authentication != null ? authentication : packetSender, () -> {
+                try {
+                    callHandlers(packet, registrations, packetSender, channelHandlerContext);
+                } finally {
+                    packet.release();
+                }
+            });
+        } catch (IllegalStateException exception) {
+            packet.release();
+            throw exception;
+        }
+    }
+
+    private void callFlyweight(FlyweightPacket packet, PacketSender packetSender, ChannelHandlerContext channelHandlerContext, ChannelIdentity authentication) {
+        var dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            this.callFlyweight(packet, packetSender, channelHandlerContext);
+            return;
+        }
+        // the view is reused once the decoder moves on, the sender's stripe gets a copy so it stays in order with the other packets
+        FlyweightPacket copy = packet.copy();
+        try {
+            dispatcher.dispatch(authentication != null ? authentication : packetSender, () -> {
+                try {
+                    this.callFlyweight(copy, packetSender, channelHandlerContext);
+                } finally {
+                    copy.release();
+                }
+            });
+        } catch (IllegalStateException exception) {
+            copy.release();
+            throw exception;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void callFlyweight(FlyweightPacket packet, PacketSender packetSender, ChannelHandlerContext channelHandlerContext) {
+        if (packet.uniqueId() != null && this.packetQuery.waiting().containsKey(packet.uniqueId())) {
+            this.packetQuery.dispatch(packet.copy());
+        }
+        var handlers = this.flyweightHandlers.get(packet.getClass());
+        if (handlers != null) {
+            for (var handler : handlers) {
+                ((FlyweightHandler) handler).handle(packet, packetSender, channelHandlerContext);
+            }
+        }
+        callHandlers(packet, this.dispatchTable.get().handlers(packet.getClass()), packetSender, channelHandlerContext);
+    }
+
+    private void dispatchWaiting(NettyPacket packet) {
         if (packet.uniqueId() != null) {
             if (this.packetQuery.waiting().containsKey(packet.uniqueId())) {
+                packet.detach();
                 this.packetQuery.dispatch(packet);
             }
             if (packet instanceof RoutingResultReplyPacket routingResultReplyPacket && this.packetQuery.waiting().containsKey(packet.uniqueId())) {
+                packet.detach();
                 this.packetRouter.dispatch(routingResultReplyPacket);
             }
         }
-
-        callHandlers(packet, packetSender, channelHandlerContext);
     }
 
     public boolean isPacketAllow(NettyPacket packetBase) {
-        var packetId = packetBase.getClass().getName();
-        Packery.debug(Level.INFO, this.getClass(), "Checking PacketId: {0}", packetId);
-        if (packetBase.uniqueId() != null && this.packetQuery.waiting().containsKey(packetBase.uniqueId())) {
-            Packery.debug(Level.WARNING, this.getClass(), "Accepted {0} because Packet is in Query", packetId);
+        return this.isPacketAllow(packetBase.getClass(), packetBase.uniqueId());
+    }
+
+    public boolean isPacketAllow(String packetId, UUID uniqueId) {
+        var packetClass = this.packetRegistry.known(packetId);
+        return packetClass != null ? this.isPacketAllow(packetClass, uniqueId) : this.isPacketAllow(0, packetId, uniqueId);
+    }
+
+    public boolean isPacketAllow(Class<? extends NettyPacket> packetClass, UUID uniqueId) {
+        return this.isPacketAllow(this.packetRegistry.id(packetClass), packetClass.getName(), uniqueId);
+    }
+
+    private boolean isPacketAllow(int id, String packetId, UUID uniqueId) {
+        var admission = this.admission;
+        if (admission.allows(id)) {
+            if (Packery.DEV_MODE) {
+                Packery.debug(Level.WARNING, this.getClass(), admission.bypass() ? "Allowed all: bypass: {0}" : "Accepted {0}", packetId);
+            }
             return true;
         }
-
-        var result = this.allowedPackets.contains(packetBase.getClass().getName());
-        if (this.allowedPackets.contains(BypassCheck.class.getName())) {
-            Packery.debug(Level.WARNING, this.getClass(), "Allowed all: bypass: {0}", packetId);
-            result = true;
+        if (uniqueId != null && this.packetQuery.waiting().containsKey(uniqueId)) {
+            if (Packery.DEV_MODE) {
+                Packery.debug(Level.WARNING, this.getClass(), "Accepted {0} because Packet is in Query", packetId);
+            }
+            return true;
         }
-        if (!result) {
+        if (Packery.DEV_MODE) {
             Packery.debug(Level.SEVERE, this.getClass(), "Packet check for: {0} is marked as not allowed!", packetId);
-        } else {
-            Packery.debug(Level.WARNING, this.getClass(), "Accepted {0}", packetId);
         }
-        return result;
+        return false;
     }
 
 /*    public <P extends PacketBase> boolean registerPacketHandler(long packetId, Class<? extends PacketReceiveListener<P>> handler) {
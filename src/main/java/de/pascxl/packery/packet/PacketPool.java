@@ -0,0 +1,239 @@
+package de.pascxl.packery.packet;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.Packery;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+public final class PacketPool {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Map<Class<?>, Pool> POOLS = new ConcurrentHashMap<>(0);
+    private static final ClassValue<Pool> CACHE = new ClassValue<>() {
+        @Override
+        protected Pool computeValue(Class<?> type) {
+            return POOLS.computeIfAbsent(type, Pool::new);
+        }
+    };
+
+    private PacketPool() {
+    }
+
+    public static void enable(Class<? extends NettyPacket> packetClass) {
+        enable(packetClass, DEFAULT_CAPACITY);
+    }
+
+    public static void enable(Class<? extends NettyPacket> packetClass, int capacity) {
+        CACHE.get(packetClass).capacity = Math.max(0, capacity);
+    }
+
+    public static void disable(Class<? extends NettyPacket> packetClass) {
+        CACHE.get(packetClass).capacity = 0;
+    }
+
+    public static boolean pooled(Class<? extends NettyPacket> packetClass) {
+        return CACHE.get(packetClass).capacity > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <P extends NettyPacket> P acquire(Class<P> packetClass) {
+        var pool = CACHE.get(packetClass);
+        if (pool.capacity == 0) {
+            return null;
+        }
+        return (P) pool.acquire();
+    }
+
+    public static Collection<Statistics> statistics() {
+        Collection<Statistics> statistics = new ArrayList<>(POOLS.size());
+        for (var pool : POOLS.values()) {
+            if (pool.capacity == 0 && pool.created.sum() == 0) {
+                continue;
+            }
+            statistics.add(new Statistics(pool.packetClass, pool.capacity, pool.created.sum(), pool.recycled.sum(), pool.leaks.sum()));
+        }
+        return statistics;
+    }
+
+    public record Statistics(Class<?> packetClass, int capacity, long created, long recycled, long leaks) {
+    }
+
+    private static final class Pool {
+
+        private final Class<?> packetClass;
+        private final ThreadLocal<ArrayDeque<NettyPacket>> packets = ThreadLocal.withInitial(ArrayDeque::new);
+        // packets released on another thread than the one that acquired them, e.g. by a StripedDispatcher
+        private final ConcurrentLinkedQueue<NettyPacket> shared = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger sharedSize = new AtomicInteger();
+        private final LongAdder created = new LongAdder();
+        private final LongAdder recycled = new LongAdder();
+        private final LongAdder leaks = new LongAdder();
+        private volatile int capacity;
+
+        private Pool(Class<?> packetClass) {
+            this.packetClass = packetClass;
+        }
+
+        private NettyPacket acquire() {
+            var packet = this.packets.get().pollLast();
+            if (packet == null && (packet = this.shared.poll()) != null) {
+                this.sharedSize.decrementAndGet();
+            }
+            if (packet == null) {
+                packet = PacketFactory.create(this.packetClass.asSubclass(NettyPacket.class));
+                if (packet == null) {
+                    return null;
+                }
+                packet.poolHandle(new Handle(this, packet));
+                this.created.increment();
+            } else {
+                this.recycled.increment();
+            }
+            packet.poolHandle().acquire();
+            return packet;
+        }
+
+        private void recycle(NettyPacket packet, Thread owner) {
+            if (Thread.currentThread() == owner) {
+                var packets = this.packets.get();
+                if (packets.size() < this.capacity) {
+                    packets.addLast(packet);
+                    return;
+                }
+            }
+            if (this.sharedSize.incrementAndGet() <= this.capacity) {
+                this.shared.offer(packet);
+            } else {
+                this.sharedSize.decrementAndGet();
+            }
+        }
+    }
+
+    static final class Handle {
+
+        private final Pool pool;
+        private final Tracker tracker;
+        private Thread owner;
+
+        private Handle(Pool pool, NettyPacket packet) {
+            this.pool = pool;
+            this.tracker = new Tracker(pool);
+            if (Packery.DEV_MODE) {
+                CLEANER.register(packet, this.tracker);
+            }
+        }
+
+        private void acquire() {
+            this.owner = Thread.currentThread();
+            this.tracker.references.set(1);
+            if (Packery.DEV_MODE) {
+                this.tracker.acquired = new Throwable("Acquired here");
+            }
+        }
+
+        void retain() {
+            while (true) {
+                var references = this.tracker.references.get();
+                if (references < 0) {
+                    return;
+                }
+                if (references == 0) {
+                    throw new IllegalStateException(this.pool.packetClass.getName() + " was already released");
+                }
+                if (this.tracker.references.compareAndSet(references, references + 1)) {
+                    return;
+                }
+            }
+        }
+
+        boolean release(NettyPacket packet) {
+            while (true) {
+                var references = this.tracker.references.get();
+                if (references < 0) {
+                    return false;
+                }
+                if (references == 0) {
+                    throw new IllegalStateException(this.pool.packetClass.getName() + " was already released");
+                }
+                if (this.tracker.references.compareAndSet(references, references - 1)) {
+                    if (references > 1) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            packet.deallocate();
+            packet.uniqueId(null);
+            var owner = this.owner;
+            this.owner = null;
+            this.pool.recycle(packet, owner);
+            return true;
+        }
+
+        void detach() {
+            this.tracker.references.set(-1);
+        }
+    }
+
+    private static final class Tracker implements Runnable {
+
+        private final Pool pool;
+        private final AtomicInteger references = new AtomicInteger();
+        private volatile Throwable acquired;
+
+        private Tracker(Pool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            if (this.references.get() > 0) {
+                this.pool.leaks.increment();
+                Packery.log(Level.SEVERE, PacketPool.class, "LEAK: pooled {0} was garbage collected without release(), {1}",
+                        this.pool.packetClass.getName(), this.acquired != null ? stackTrace(this.acquired) : "enable DEV_MODE for the acquiring stack trace");
+            }
+        }
+
+        private static String stackTrace(Throwable throwable) {
+            var builder = new StringBuilder("acquired at:");
+            for (var element : throwable.getStackTrace()) {
+                builder.append("{NEXT_LINE}    ").append(element);
+            }
+            return builder.toString();
+        }
+    }
+}
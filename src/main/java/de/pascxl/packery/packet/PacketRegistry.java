@@ -0,0 +1,113 @@
+package de.pascxl.packery.packet;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PacketRegistry {
+
+    public static final int MAX_PACKET_ID = 1 << 16;
+
+    private final ClassValue<PacketId> packetIds = new ClassValue<>() {
+        @Override
+        protected PacketId computeValue(Class<?> type) {
+            return new PacketId();
+        }
+    };
+    private final Map<String, Class<? extends NettyPacket>> packetClasses = new ConcurrentHashMap<>(0);
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private volatile Class<? extends NettyPacket>[] packets = new Class[1];
+
+    public synchronized int register(Class<? extends NettyPacket> clazz) {
+        var packetId = this.packetIds.get(clazz);
+        if (packetId.id != 0) {
+            return packetId.id;
+        }
+        var id = this.packets.length;
+        if (id >= MAX_PACKET_ID) {
+            throw new IllegalStateException("Packet registry is full, cannot register " + clazz.getName());
+        }
+        var packets = Arrays.copyOf(this.packets, id + 1);
+        packets[id] = clazz;
+        this.packetClasses.put(clazz.getName(), clazz);
+        this.packets = packets;
+        packetId.id = id;
+        return id;
+    }
+
+    public int id(Class<?> clazz) {
+        return this.packetIds.get(clazz).id;
+    }
+
+    public int idOf(Class<? extends NettyPacket> clazz) {
+        var id = this.id(clazz);
+        return id != 0 ? id : this.register(clazz);
+    }
+
+    public Class<? extends NettyPacket> packetClass(int id) {
+        var packets = this.packets;
+        return id > 0 && id < packets.length ? packets[id] : null;
+    }
+
+    public Class<? extends NettyPacket> known(String className) {
+        return this.packetClasses.get(className);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<? extends NettyPacket> resolve(String className) throws ClassNotFoundException {
+        var packetClass = this.packetClasses.get(className);
+        if (packetClass != null) {
+            return packetClass;
+        }
+        var clazz = Class.forName(className);
+        if (!NettyPacket.class.isAssignableFrom(clazz)) {
+            throw new ClassCastException(className + " is not a NettyPacket");
+        }
+        packetClass = (Class<? extends NettyPacket>) clazz;
+        this.packetClasses.putIfAbsent(className, packetClass);
+        return packetClass;
+    }
+
+    public List<String> table() {
+        var packets = this.packets;
+        List<String> table = new ArrayList<>(packets.length - 1);
+        for (int i = 1; i < packets.length; i++) {
+            table.add(packets[i].getName());
+        }
+        return table;
+    }
+
+    public int size() {
+        return this.packets.length - 1;
+    }
+
+    private static final class PacketId {
+        private volatile int id;
+    }
+}
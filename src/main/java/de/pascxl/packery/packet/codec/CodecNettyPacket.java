@@ -0,0 +1,50 @@
+package de.pascxl.packery.packet.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+
+import java.util.UUID;
+
+public abstract class CodecNettyPacket extends NettyPacket {
+
+    public CodecNettyPacket() {
+    }
+
+    public CodecNettyPacket(UUID uniqueId) {
+        super(uniqueId);
+    }
+
+    @Override
+    public void write(ByteBuffer out) {
+        PacketCodecs.require(this.getClass()).write(this, out);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        PacketCodecs.require(this.getClass()).read(this, in);
+    }
+}
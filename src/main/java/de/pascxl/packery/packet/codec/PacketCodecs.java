@@ -0,0 +1,101 @@
+package de.pascxl.packery.packet.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.Packery;
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+public final class PacketCodecs {
+
+    private static final Map<Class<?>, PacketCodec<?>> CODECS = new ConcurrentHashMap<>(0);
+    private static final ClassValue<Optional<PacketCodec<?>>> CACHE = new ClassValue<>() {
+        @Override
+        protected Optional<PacketCodec<?>> computeValue(Class<?> type) {
+            return Optional.ofNullable(CODECS.get(type));
+        }
+    };
+
+    static {
+        load(PacketCodecs.class.getClassLoader());
+        var contextClassLoader = Thread.currentThread().getContextClassLoader();
+        if (contextClassLoader != null && contextClassLoader != PacketCodecs.class.getClassLoader()) {
+            load(contextClassLoader);
+        }
+    }
+
+    private PacketCodecs() {
+    }
+
+    public static void load(ClassLoader classLoader) {
+        try {
+            for (var provider : ServiceLoader.load(PacketCodecProvider.class, classLoader)) {
+                provider.codecs().forEach(PacketCodecs::register);
+            }
+        } catch (ServiceConfigurationError error) {
+            Packery.log(Level.SEVERE, PacketCodecs.class, "Cannot load packet codecs: {0}", error.getMessage());
+        }
+    }
+
+    public static void register(PacketCodec<?> codec) {
+        CODECS.put(codec.packetClass(), codec);
+        CACHE.remove(codec.packetClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <P extends NettyPacket> PacketCodec<P> codec(Class<P> packetClass) {
+        return (PacketCodec<P>) CACHE.get(packetClass).orElse(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <P extends NettyPacket> PacketCodec<P> require(Class<? extends NettyPacket> packetClass) {
+        var codec = CACHE.get(packetClass).orElse(null);
+        if (codec == null) {
+            throw new IllegalStateException("No generated codec for " + packetClass.getName() + ", is the packery annotation processor enabled?");
+        }
+        return (PacketCodec<P>) codec;
+    }
+
+    public static Collection<PacketCodec<?>> codecs() {
+        return List.copyOf(CODECS.values());
+    }
+
+    public static int readSize(ByteBuffer in) {
+        var size = in.readVarInt();
+        if (size < 0 || size > in.buffer().readableBytes()) {
+            throw new IllegalStateException("Size " + size + " exceeds the readable bytes");
+        }
+        return size;
+    }
+}
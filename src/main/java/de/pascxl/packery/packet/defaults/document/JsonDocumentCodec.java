@@ -0,0 +1,253 @@
+package de.pascxl.packery.packet.defaults.document;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import de.golgolex.quala.json.document.JsonDocument;
+import de.pascxl.packery.buffer.ByteBuffer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Element: tag byte, payload. Object keys are written once per document and referenced by index + 1 afterwards
+public final class JsonDocumentCodec {
+
+    public static final int MAX_DEPTH = 512;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte NUMBER = 5;
+    private static final byte STRING = 6;
+    private static final byte ARRAY = 7;
+    private static final byte OBJECT = 8;
+
+    private JsonDocumentCodec() {
+    }
+
+    public static void write(ByteBuffer out, JsonDocument jsonDocument) {
+        writeObject(out, jsonDocument.jsonObject(), new HashMap<>(), 0);
+    }
+
+    public static JsonDocument read(ByteBuffer in) {
+        var jsonDocument = new JsonDocument();
+        readObject(in, jsonDocument.jsonObject(), new ArrayList<>(), 0);
+        return jsonDocument;
+    }
+
+    public static void writeElement(ByteBuffer out, JsonElement element) {
+        writeElement(out, element, new HashMap<>(), 0);
+    }
+
+    public static JsonElement readElement(ByteBuffer in) {
+        return readElement(in, new ArrayList<>(), 0);
+    }
+
+    public static JsonElement readMember(ByteBuffer in, String key) {
+        var keys = new ArrayList<String>();
+        var size = readCount(in);
+        for (int i = 0; i < size; i++) {
+            if (readKey(in, keys).equals(key)) {
+                return readElement(in, keys, 1);
+            }
+            skipElement(in, keys, 1);
+        }
+        return null;
+    }
+
+    private static void writeElement(ByteBuffer out, JsonElement element, Map<String, Integer> keys, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Json document exceeds the maximum depth of " + MAX_DEPTH);
+        }
+        if (element == null || element.isJsonNull()) {
+            out.writeByte(NULL);
+        } else if (element instanceof JsonObject object) {
+            out.writeByte(OBJECT);
+            writeObject(out, object, keys, depth + 1);
+        } else if (element instanceof JsonArray array) {
+            out.writeByte(ARRAY);
+            out.writeVarInt(array.size());
+            for (var item : array) {
+                writeElement(out, item, keys, depth + 1);
+            }
+        } else {
+            writePrimitive(out, element.getAsJsonPrimitive());
+        }
+    }
+
+    private static void writeObject(ByteBuffer out, JsonObject object, Map<String, Integer> keys, int depth) {
+        out.writeVarInt(object.size());
+        for (var entry : object.entrySet()) {
+            var index = keys.get(entry.getKey());
+            if (index != null) {
+                out.writeVarInt(index + 1);
+            } else {
+                keys.put(entry.getKey(), keys.size());
+                out.writeVarInt(0);
+                out.writeString(entry.getKey());
+            }
+            writeElement(out, entry.getValue(), keys, depth);
+        }
+    }
+
+    private static void writePrimitive(ByteBuffer out, JsonPrimitive primitive) {
+        if (primitive.isBoolean()) {
+            out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+        } else if (primitive.isString()) {
+            out.writeByte(STRING);
+            out.writeString(primitive.getAsString());
+        } else {
+            var number = primitive.getAsNumber();
+            if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+                out.writeByte(LONG);
+                out.writeSignedVarLong(number.longValue());
+            } else if (number instanceof Double || number instanceof Float) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(number.doubleValue());
+            } else {
+                writeNumber(out, number.toString());
+            }
+        }
+    }
+
+    private static void writeNumber(ByteBuffer out, String value) {
+        if (integral(value)) {
+            out.writeByte(LONG);
+            out.writeSignedVarLong(Long.parseLong(value));
+            return;
+        }
+        out.writeByte(NUMBER);
+        out.writeString(value);
+    }
+
+    private static boolean integral(String value) {
+        var start = value.startsWith("-") ? 1 : 0;
+        if (value.length() <= start || value.length() > start + 18) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonElement readElement(ByteBuffer in, List<String> keys, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Json document exceeds the maximum depth of " + MAX_DEPTH);
+        }
+        var tag = in.readByte();
+        return switch (tag) {
+            case NULL -> JsonNull.INSTANCE;
+            case TRUE -> new JsonPrimitive(true);
+            case FALSE -> new JsonPrimitive(false);
+            case LONG -> new JsonPrimitive(in.readSignedVarLong());
+            case DOUBLE -> new JsonPrimitive(in.readDouble());
+            case NUMBER -> new JsonPrimitive(new BigDecimal(in.readString()));
+            case STRING -> new JsonPrimitive(in.readString());
+            case ARRAY -> {
+                var size = readCount(in);
+                var array = new JsonArray(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(readElement(in, keys, depth + 1));
+                }
+                yield array;
+            }
+            case OBJECT -> {
+                var object = new JsonObject();
+                readObject(in, object, keys, depth + 1);
+                yield object;
+            }
+            default -> throw new IllegalStateException("Unknown json tag " + tag);
+        };
+    }
+
+    private static void readObject(ByteBuffer in, JsonObject object, List<String> keys, int depth) {
+        var size = readCount(in);
+        for (int i = 0; i < size; i++) {
+            var key = readKey(in, keys);
+            object.add(key, readElement(in, keys, depth));
+        }
+    }
+
+    private static void skipElement(ByteBuffer in, List<String> keys, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Json document exceeds the maximum depth of " + MAX_DEPTH);
+        }
+        var tag = in.readByte();
+        switch (tag) {
+            case NULL, TRUE, FALSE -> {
+            }
+            case LONG -> in.readSignedVarLong();
+            case DOUBLE -> in.buffer().skipReadableBytes(Double.BYTES);
+            case NUMBER, STRING -> in.buffer().skipReadableBytes(in.readVarInt());
+            case ARRAY -> {
+                var size = readCount(in);
+                for (int i = 0; i < size; i++) {
+                    skipElement(in, keys, depth + 1);
+                }
+            }
+            case OBJECT -> {
+                var size = readCount(in);
+                for (int i = 0; i < size; i++) {
+                    readKey(in, keys);
+                    skipElement(in, keys, depth + 1);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown json tag " + tag);
+        }
+    }
+
+    private static String readKey(ByteBuffer in, List<String> keys) {
+        var index = in.readVarInt();
+        if (index == 0) {
+            var key = in.readString();
+            keys.add(key);
+            return key;
+        }
+        if (index > keys.size()) {
+            throw new IllegalStateException("Unknown json key index " + index);
+        }
+        return keys.get(index - 1);
+    }
+
+    private static int readCount(ByteBuffer in) {
+        var size = in.readVarInt();
+        if (size < 0 || size > in.buffer().readableBytes()) {
+            throw new IllegalStateException("Json element count " + size + " exceeds the readable bytes");
+        }
+        return size;
+    }
+}
@@ -24,11 +24,12 @@ package de.pascxl.packery.packet.defaults.document;
  * SOFTWARE.
  */
 
-import com.google.gson.JsonObject;
-import de.golgolex.quala.json.JsonUtils;
+import com.google.gson.JsonElement;
 import de.golgolex.quala.json.document.JsonDocument;
 import de.pascxl.packery.buffer.ByteBuffer;
 import de.pascxl.packery.packet.NettyPacket;
+import io.netty5.buffer.MemoryManager;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.UUID;
@@ -37,6 +38,8 @@ import java.util.UUID;
 public class JsonNettyPacket extends NettyPacket {
 
     private JsonDocument jsonDocument;
+    @Getter(AccessLevel.NONE)
+    private byte[] payload;
 
     public JsonNettyPacket() {
         this.jsonDocument = new JsonDocument();
@@ -51,13 +54,58 @@ public class JsonNettyPacket extends NettyPacket {
         this.jsonDocument = jsonDocument;
     }
 
+    public JsonDocument jsonDocument() {
+        if (this.payload != null) {
+            try (var buffer = MemoryManager.unsafeWrap(this.payload)) {
+                this.jsonDocument = JsonDocumentCodec.read(new ByteBuffer(buffer));
+            }
+            this.payload = null;
+        }
+        return this.jsonDocument;
+    }
+
+    public JsonElement member(String key) {
+        if (this.payload == null) {
+            return this.jsonDocument.jsonObject().get(key);
+        }
+        try (var buffer = MemoryManager.unsafeWrap(this.payload)) {
+            return JsonDocumentCodec.readMember(new ByteBuffer(buffer), key);
+        }
+    }
+
+    public boolean decoded() {
+        return this.payload == null;
+    }
+
     @Override
     public void write(ByteBuffer out) {
-        out.writeString(JsonUtils.toJson(this.jsonDocument));
+        if (this.payload != null) {
+            out.writeInt(this.payload.length);
+            out.buffer().writeBytes(this.payload);
+            return;
+        }
+        var lengthOffset = out.buffer().writerOffset();
+        out.writeInt(0);
+        JsonDocumentCodec.write(out, this.jsonDocument);
+        out.buffer().setInt(lengthOffset, out.buffer().writerOffset() - lengthOffset - Integer.BYTES);
     }
 
     @Override
     public void read(ByteBuffer in) {
-        this.jsonDocument = new JsonDocument(JsonUtils.JSON.fromJson(in.readString(), JsonDocument.class));
+        var length = in.readInt();
+        if (length < 0 || length > in.buffer().readableBytes()) {
+            throw new IllegalStateException("Json document length " + length + " exceeds the readable bytes");
+        }
+        if (in.context() != null && in.context().packetManager().lazyJsonDecoding()) {
+            this.payload = new byte[length];
+            in.buffer().readBytes(this.payload, 0, length);
+            this.jsonDocument = null;
+            return;
+        }
+        var end = in.buffer().readerOffset() + length;
+        this.jsonDocument = JsonDocumentCodec.read(in);
+        if (in.buffer().readerOffset() != end) {
+            throw new IllegalStateException("Json document did not match its length");
+        }
     }
 }
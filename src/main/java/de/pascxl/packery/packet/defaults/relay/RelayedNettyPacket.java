@@ -0,0 +1,87 @@
+package de.pascxl.packery.packet.defaults.relay;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+import io.netty5.buffer.Buffer;
+import io.netty5.util.Resource;
+import io.netty5.util.Send;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+// Outbound only: PacketClassEncoder writes packetName as the packet type and the undecoded body as the packet body
+@Getter
+public final class RelayedNettyPacket extends NettyPacket implements Resource<RelayedNettyPacket> {
+
+    private final String packetName;
+    @Getter(AccessLevel.NONE)
+    private Buffer body;
+
+    RelayedNettyPacket(String packetName, Buffer body) {
+        this.packetName = packetName;
+        this.body = body;
+    }
+
+    @Override
+    public void write(ByteBuffer out) {
+        if (this.body == null) {
+            throw new IllegalStateException("RelayedNettyPacket " + this.packetName + " was already written");
+        }
+        out.buffer().ensureWritable(this.body.readableBytes());
+        out.buffer().writeBytes(this.body);
+        this.close();
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        throw new UnsupportedOperationException("RelayedNettyPacket cannot be received");
+    }
+
+    @Override
+    public Send<RelayedNettyPacket> send() {
+        if (this.body == null) {
+            throw new IllegalStateException("RelayedNettyPacket " + this.packetName + " is not accessible");
+        }
+        var packetName = this.packetName;
+        var body = this.body.send();
+        this.body = null;
+        return Send.sending(RelayedNettyPacket.class, () -> new RelayedNettyPacket(packetName, body.receive()));
+    }
+
+    @Override
+    public boolean isAccessible() {
+        return this.body != null;
+    }
+
+    @Override
+    public void close() {
+        if (this.body != null) {
+            this.body.close();
+            this.body = null;
+        }
+    }
+}
@@ -24,67 +24,132 @@ package de.pascxl.packery.packet.defaults.relay;
  * SOFTWARE.
  */
 
-import de.golgolex.quala.reflections.Allocator;
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.buffer.ByteBuffer;
 import de.pascxl.packery.network.ChannelIdentity;
 import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketFactory;
+import de.pascxl.packery.packet.PacketRegistry;
+import io.netty5.buffer.Buffer;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.logging.Level;
 
+// Body: identity, inner type name, int length, inner body written without the codec context so it can be relayed as is
 @Getter
-public class RoutingNettyPacket extends NettyPacket {
+public class RoutingNettyPacket extends NettyPacket implements AutoCloseable {
 
+    @Getter(AccessLevel.NONE)
     private NettyPacket packet;
     private ChannelIdentity to;
+    private String packetName;
+    @Getter(AccessLevel.NONE)
+    private Buffer body;
+    @Getter(AccessLevel.NONE)
+    private PacketRegistry packetRegistry;
 
     public RoutingNettyPacket(@NonNull NettyPacket packet, @NonNull ChannelIdentity to) {
         this.packet = packet;
         this.to = to;
+        this.packetName = packet.getClass().getName();
+    }
+
+    public NettyPacket packet() {
+        if (this.packet == null && this.body != null) {
+            try (var body = this.body) {
+                this.body = null;
+                var packetClass = this.packetRegistry != null ? this.packetRegistry.known(this.packetName) : null;
+                if (packetClass == null) {
+                    Packery.log(Level.SEVERE, this.getClass(), "Routed packet {0} is not registered", this.packetName);
+                    return null;
+                }
+                this.packet = PacketFactory.createPooled(packetClass);
+                if (this.packet == null) {
+                    Packery.log(Level.SEVERE, this.getClass(), "Packet cannot be allocated");
+                    return null;
+                }
+                this.packet.read(new ByteBuffer(body));
+            }
+        }
+        return this.packet;
+    }
+
+    public boolean decoded() {
+        return this.body == null;
+    }
+
+    public RelayedNettyPacket relay() {
+        if (this.body == null) {
+            throw new IllegalStateException("RoutingNettyPacket has no undecoded body to relay");
+        }
+        var relayed = new RelayedNettyPacket(this.packetName, this.body);
+        this.body = null;
+        return relayed;
     }
 
     @Override
     public void write(ByteBuffer out) {
-        if (packet == null) {
-            Packery.log(Level.SEVERE, this.getClass(), "Cannot send RelayPacket because Packet is null");
-            return;
+        if (packet == null && body == null) {
+            throw new IllegalStateException("Cannot send RoutingNettyPacket because Packet is null");
         }
-        if (to == null) {
-            Packery.log(Level.SEVERE, this.getClass(), "Cannot send RelayPacket because ChannelIdentity is null");
-            return;
-        }
-        if (to.namespace() == null) {
-            Packery.log(Level.SEVERE, this.getClass(), "Cannot send RelayPacket because ChannelIdentity#namespace is null");
-            return;
+        if (to == null || to.namespace() == null || to.uniqueId() == null) {
+            throw new IllegalStateException("Cannot send RoutingNettyPacket because ChannelIdentity " + to + " is incomplete");
         }
-        if (to.uniqueId() == null) {
-            Packery.log(Level.SEVERE, this.getClass(), "Cannot send RelayPacket because ChannelIdentity#uniqueId is null");
+        out.writeChannelIdentity(to);
+        out.writeTypeName(this.packetName);
+
+        var buffer = out.buffer();
+        if (this.body != null) {
+            var readerOffset = this.body.readerOffset();
+            out.writeInt(this.body.readableBytes());
+            buffer.ensureWritable(this.body.readableBytes());
+            buffer.writeBytes(this.body);
+            this.body.readerOffset(readerOffset);
             return;
         }
-
-        out.writeString(to.namespace()).writeUUID(to.uniqueId());
-        out.writeString(packet.getClass().getName());
-        packet.write(out);
+        var lengthOffset = buffer.writerOffset();
+        out.writeInt(0);
+        this.packet.write(new ByteBuffer(buffer));
+        buffer.setInt(lengthOffset, buffer.writerOffset() - lengthOffset - Integer.BYTES);
     }
 
     @Override
     public void read(ByteBuffer in) {
-        this.to = new ChannelIdentity(in.readString(), in.readUUID());
-        try {
-            var packetClass = Class.forName(in.readString());
-            this.packet = (NettyPacket) Allocator.unsafeAllocation(packetClass);
+        this.to = in.readChannelIdentity();
+        this.packetName = in.readTypeName();
+        var length = in.readInt();
+        if (length < 0 || length > in.buffer().readableBytes()) {
+            throw new IllegalStateException("Routed packet length " + length + " exceeds the frame");
+        }
+        this.packet = null;
+        this.packetRegistry = in.context() != null ? in.context().packetManager().packetRegistry() : null;
+        this.body = in.buffer().readSplit(length);
+    }
 
-            if (packet == null) {
-                Packery.log(Level.SEVERE, this.getClass(), "Packet cannot be allocated");
-                return;
-            }
+    @Override
+    public void close() {
+        if (this.body != null) {
+            this.body.close();
+            this.body = null;
+        }
+        if (this.packet != null) {
+            this.packet.release();
+            this.packet = null;
+        }
+    }
 
-            this.packet.read(in);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
+    @Override
+    public void detach() {
+        super.detach();
+        if (this.packet != null) {
+            this.packet.detach();
         }
     }
 
+    @Override
+    protected void deallocate() {
+        this.close();
+    }
 }
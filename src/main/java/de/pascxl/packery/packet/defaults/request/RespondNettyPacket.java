@@ -24,7 +24,6 @@ package de.pascxl.packery.packet.defaults.request;
  * SOFTWARE.
  */
 
-import de.golgolex.quala.reflections.Allocator;
 import de.pascxl.packery.Packery;
 import de.pascxl.packery.buffer.ByteBuffer;
 import de.pascxl.packery.packet.NettyPacket;
@@ -47,26 +46,36 @@ public class RespondNettyPacket extends NettyPacket {
     @Override
     public void write(ByteBuffer out)
     {
-        out.writeString(packet.getClass().getName());
-        packet.write(out);
+        out.writePacket(packet);
     }
 
     @Override
     public void read(ByteBuffer in)
     {
         try {
-            var packetClass = Class.forName(in.readString());
-            this.packet = (NettyPacket) Allocator.unsafeAllocation(packetClass);
+            this.packet = in.readPacket();
 
             if (packet == null) {
                 Packery.log(Level.SEVERE, this.getClass(), "Packet cannot be allocated");
-                return;
             }
-
-            this.packet.read(in);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public void detach() {
+        super.detach();
+        if (this.packet != null) {
+            this.packet.detach();
+        }
+    }
+
+    @Override
+    protected void deallocate() {
+        if (this.packet != null) {
+            this.packet.release();
+            this.packet = null;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package de.pascxl.packery.packet.flyweight;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.PacketFactory;
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferAllocator;
+
+// Inbound flyweights are views reused per connection and only valid until the handler returns, copy() detaches them
+public abstract class FlyweightPacket extends NettyPacket {
+
+    private static final BufferAllocator ALLOCATOR = BufferAllocator.onHeapUnpooled();
+
+    private Buffer buffer;
+    private int offset;
+
+    protected FlyweightPacket() {
+    }
+
+    protected FlyweightPacket(int size) {
+        this.buffer = ALLOCATOR.allocate(size).fill((byte) 0).writerOffset(size);
+    }
+
+    public abstract int size();
+
+    protected final Buffer buffer() {
+        if (this.buffer == null) {
+            throw new IllegalStateException(this.getClass().getName() + " is not attached to a buffer");
+        }
+        return this.buffer;
+    }
+
+    protected final int offset() {
+        return this.offset;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <F extends FlyweightPacket> F copy() {
+        FlyweightPacket copy = PacketFactory.create(this.getClass());
+        if (copy == null) {
+            throw new IllegalStateException("Cannot create a copy of " + this.getClass().getName());
+        }
+        var size = this.size();
+        copy.buffer = ALLOCATOR.allocate(size).writerOffset(size);
+        this.buffer().copyInto(this.offset, copy.buffer, 0, size);
+        copy.uniqueId(this.uniqueId());
+        return (F) copy;
+    }
+
+    @Override
+    public void write(ByteBuffer out) {
+        var buffer = this.buffer();
+        var size = this.size();
+        var index = 0;
+        for (; index + Long.BYTES <= size; index += Long.BYTES) {
+            out.writeLong(buffer.getLong(this.offset + index));
+        }
+        for (; index < size; index++) {
+            out.writeByte(buffer.getByte(this.offset + index));
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        var buffer = in.buffer();
+        if (buffer.readableBytes() < this.size()) {
+            throw new IndexOutOfBoundsException(this.getClass().getName() + " needs " + this.size() + " bytes, the frame has " + buffer.readableBytes());
+        }
+        this.buffer = buffer;
+        this.offset = buffer.readerOffset();
+        buffer.skipReadableBytes(this.size());
+    }
+
+    public void unwrap() {
+        this.buffer = null;
+        this.offset = 0;
+    }
+}
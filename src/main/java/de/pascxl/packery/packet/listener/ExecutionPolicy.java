@@ -0,0 +1,183 @@
+package de.pascxl.packery.packet.listener;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.Packery;
+import io.netty5.channel.Channel;
+import io.netty5.channel.ChannelOption;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+// INLINE runs listeners on the event loop, VIRTUAL and dedicated() hand them to an executor; only INLINE and single
+// threaded pools keep packet order. Once queueCapacity calls are waiting, the submitting channels stop reading.
+public final class ExecutionPolicy {
+
+    private static final int FALLBACK_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int FALLBACK_QUEUE_CAPACITY = 8192;
+
+    public static final ExecutionPolicy INLINE = new ExecutionPolicy("inline", null, 0);
+    public static final ExecutionPolicy VIRTUAL = virtual();
+
+    @Getter
+    private final String name;
+    private final ExecutorService executor;
+    @Getter
+    private final int queueCapacity;
+    private final Set<Channel> paused = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private ExecutionPolicy(String name, ExecutorService executor, int queueCapacity) {
+        this.name = name;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static ExecutionPolicy dedicated(String name, int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("threads and queueCapacity have to be positive");
+        }
+        return new ExecutionPolicy(name, fixedExecutor("packery-" + name + "-", threads), queueCapacity);
+    }
+
+    public boolean inline() {
+        return this.executor == null;
+    }
+
+    public void execute(Runnable task) {
+        this.execute(task, null);
+    }
+
+    public void execute(Runnable task, Channel channel) {
+        if (this.executor == null) {
+            this.executed.increment();
+            task.run();
+            return;
+        }
+        var submitted = System.nanoTime();
+        Runnable command = () -> {
+            if (this.queued.decrementAndGet() <= this.queueCapacity / 2 && !this.paused.isEmpty()) {
+                this.resume();
+            }
+            var waited = System.nanoTime() - submitted;
+            this.waitNanos.add(waited);
+            this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+            this.executed.increment();
+            task.run();
+        };
+        var depth = this.queued.incrementAndGet();
+        try {
+            this.executor.execute(command);
+        } catch (RejectedExecutionException exception) {
+            this.queued.decrementAndGet();
+            throw exception;
+        }
+        // the task is queued either way, the channel stops reading until the queue has drained to half its capacity
+        if (channel != null && this.queueCapacity > 0 && depth >= this.queueCapacity && this.paused.add(channel)) {
+            this.pauses.increment();
+            autoRead(channel, false);
+            if (this.queued.get() <= this.queueCapacity / 2) {
+                this.resume();
+            }
+        }
+    }
+
+    private void resume() {
+        for (var iterator = this.paused.iterator(); iterator.hasNext(); ) {
+            var channel = iterator.next();
+            iterator.remove();
+            autoRead(channel, true);
+        }
+    }
+
+    private static void autoRead(Channel channel, boolean autoRead) {
+        if (channel.executor().inEventLoop()) {
+            channel.setOption(ChannelOption.AUTO_READ, autoRead);
+        } else {
+            channel.executor().execute(() -> channel.setOption(ChannelOption.AUTO_READ, autoRead));
+        }
+    }
+
+    public void shutdown() {
+        if (this.executor != null && this != VIRTUAL) {
+            this.executor.shutdown();
+        }
+    }
+
+    public Statistics statistics() {
+        var executed = this.executed.sum();
+        return new Statistics(this.name, this.queued.get(), executed, this.pauses.sum(),
+                executed == 0 ? 0 : this.waitNanos.sum() / executed, this.maxWaitNanos.get());
+    }
+
+    public record Statistics(String name, int queueDepth, long executed, long pausedReads, long averageWaitNanos, long maxWaitNanos) {
+    }
+
+    private static ExecutionPolicy virtual() {
+        try {
+            var factory = MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return new ExecutionPolicy("virtual", (ExecutorService) factory.invoke(), 0);
+        } catch (Throwable throwable) {
+            Packery.debug(Level.INFO, ExecutionPolicy.class, "Virtual threads are not available, using a pool of {0} threads: {1}", FALLBACK_THREADS, throwable.getMessage());
+            return new ExecutionPolicy("virtual", fixedExecutor("packery-listener-", FALLBACK_THREADS), FALLBACK_QUEUE_CAPACITY);
+        }
+    }
+
+    private static ExecutorService fixedExecutor(String prefix, int threads) {
+        return Executors.newFixedThreadPool(threads, new ListenerThreadFactory(prefix));
+    }
+
+    private static final class ListenerThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private ListenerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            var thread = new Thread(runnable, this.prefix + this.threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package de.pascxl.packery.packet.listener;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.Packery;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+// Each sender identity maps to one stripe, a bounded MPSC ring with a single consumer, so its packets keep arrival order
+public final class StripedDispatcher implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    @Getter
+    private final String name;
+    private final Stripe[] stripes;
+    private volatile boolean closed;
+
+    public StripedDispatcher(String name, int stripes, int capacity) {
+        if (stripes < 1 || capacity < 2) {
+            throw new IllegalArgumentException("stripes has to be positive and capacity at least 2");
+        }
+        this.name = name;
+        this.stripes = new Stripe[stripes];
+        var size = Integer.highestOneBit(capacity - 1) << 1;
+        for (int index = 0; index < stripes; index++) {
+            this.stripes[index] = new Stripe(size);
+            var thread = new Thread(this.stripes[index], "packery-" + name + "-" + index);
+            thread.setDaemon(true);
+            this.stripes[index].consumer = thread;
+            thread.start();
+        }
+    }
+
+    public StripedDispatcher(String name) {
+        this(name, Runtime.getRuntime().availableProcessors(), DEFAULT_CAPACITY);
+    }
+
+    public void dispatch(Object key, Runnable task) {
+        if (this.closed) {
+            throw new IllegalStateException("Dispatcher " + this.name + " is closed");
+        }
+        var hash = key == null ? 0 : key.hashCode();
+        var stripe = this.stripes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % this.stripes.length];
+        if (Thread.currentThread() == stripe.consumer) {
+            // a handler dispatching for its own stripe would wait for itself on a full ring
+            task.run();
+            return;
+        }
+        while (!stripe.offer(task)) {
+            stripe.full.increment();
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    public List<Statistics> statistics() {
+        List<Statistics> statistics = new ArrayList<>(this.stripes.length);
+        for (int index = 0; index < this.stripes.length; index++) {
+            var stripe = this.stripes[index];
+            var executed = stripe.executed.sum();
+            statistics.add(new Statistics(this.name, index, (int) (stripe.tail.get() - stripe.head), executed, stripe.full.sum(),
+                    executed == 0 ? 0 : stripe.waitNanos.sum() / executed, stripe.maxWaitNanos));
+        }
+        return statistics;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        for (var stripe : this.stripes) {
+            LockSupport.unpark(stripe.consumer);
+        }
+    }
+
+    public record Statistics(String name, int stripe, int queueDepth, long executed, long fullWaits, long averageWaitNanos, long maxWaitNanos) {
+    }
+
+    private final class Stripe implements Runnable {
+
+        private final Runnable[] tasks;
+        private final long[] enqueued;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder full = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private volatile long head;
+        private volatile long maxWaitNanos;
+        private volatile boolean sleeping;
+        private Thread consumer;
+
+        private Stripe(int capacity) {
+            this.tasks = new Runnable[capacity];
+            this.enqueued = new long[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int index = 0; index < capacity; index++) {
+                this.sequences.set(index, index);
+            }
+        }
+
+        private boolean offer(Runnable task) {
+            while (true) {
+                var position = this.tail.get();
+                var index = (int) position & this.mask;
+                var difference = this.sequences.get(index) - position;
+                if (difference < 0) {
+                    return false;
+                }
+                if (difference == 0 && this.tail.compareAndSet(position, position + 1)) {
+                    this.tasks[index] = task;
+                    this.enqueued[index] = System.nanoTime();
+                    this.sequences.set(index, position + 1);
+                    if (this.sleeping) {
+                        LockSupport.unpark(this.consumer);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                var position = this.head;
+                var index = (int) position & this.mask;
+                if (this.sequences.get(index) != position + 1) {
+                    if (closed) {
+                        return;
+                    }
+                    this.sleeping = true;
+                    if (this.sequences.get(index) != position + 1 && !closed) {
+                        LockSupport.park(this);
+                    }
+                    this.sleeping = false;
+                    continue;
+                }
+                var task = this.tasks[index];
+                var waited = System.nanoTime() - this.enqueued[index];
+                this.tasks[index] = null;
+                this.sequences.set(index, position + this.tasks.length);
+                this.head = position + 1;
+                this.waitNanos.add(waited);
+                if (waited > this.maxWaitNanos) {
+                    this.maxWaitNanos = waited;
+                }
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    Packery.log(Level.SEVERE, StripedDispatcher.class, "Dispatch on {0} failed: {1}", Thread.currentThread().getName(), throwable.getMessage());
+                }
+                this.executed.increment();
+            }
+        }
+    }
+}
@@ -69,11 +69,6 @@ public class PacketQueue {
                     case ASYNC -> packetSender.sendPacketAsync(packet);
                     case UNSET -> packetSender.sendPacket(packet);
                 }
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
-                }
             }
             sending = false;
         }, timeUnit.toMillis(delay));
@@ -97,11 +92,6 @@ public class PacketQueue {
                 case ASYNC -> packetSender.sendPacketAsync(packet);
                 case UNSET -> packetSender.sendPacket(packet);
             }
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                Packery.log(Level.SEVERE, this.getClass(), e.getMessage());
-            }
         }
         sending = false;
     }
@@ -0,0 +1,427 @@
+package de.pascxl.packery.packet.record;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.golgolex.quala.json.document.JsonDocument;
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.network.ChannelIdentity;
+import de.pascxl.packery.packet.NettyPacket;
+import de.pascxl.packery.packet.defaults.document.JsonDocumentCodec;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Components in declaration order, every non-primitive component carries a presence flag
+public final class RecordCodec<R extends Record> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType WRITER = MethodType.methodType(void.class, ByteBuffer.class, Object.class);
+    private static final MethodType READER = MethodType.methodType(Object.class, ByteBuffer.class);
+    private static final Map<String, RecordCodec<?>> REGISTERED = new ConcurrentHashMap<>(0);
+    private static final ClassValue<RecordCodec<?>> CACHE = new ClassValue<>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected RecordCodec<?> computeValue(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new IllegalArgumentException(type.getName() + " is not a record");
+            }
+            return new RecordCodec(type);
+        }
+    };
+
+    private static final MethodHandle WRITE_TRUE;
+    private static final MethodHandle WRITE_FALSE;
+    private static final MethodHandle READ_BOOLEAN;
+    private static final MethodHandle IS_NULL;
+
+    static {
+        try {
+            var writeBoolean = LOOKUP.findVirtual(ByteBuffer.class, "writeBoolean", MethodType.methodType(ByteBuffer.class, Boolean.class));
+            WRITE_TRUE = MethodHandles.insertArguments(writeBoolean, 1, Boolean.TRUE).asType(MethodType.methodType(void.class, ByteBuffer.class));
+            WRITE_FALSE = MethodHandles.insertArguments(writeBoolean, 1, Boolean.FALSE).asType(MethodType.methodType(void.class, ByteBuffer.class));
+            READ_BOOLEAN = LOOKUP.findVirtual(ByteBuffer.class, "readBoolean", MethodType.methodType(boolean.class));
+            IS_NULL = LOOKUP.findStatic(Objects.class, "isNull", MethodType.methodType(boolean.class, Object.class));
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    @Getter
+    private final Class<R> recordType;
+    private final MethodHandle writer;
+    private final MethodHandle[] readers;
+    private final MethodHandle constructor;
+
+    private RecordCodec(Class<R> recordType) {
+        this.recordType = recordType;
+        try {
+            var lookup = MethodHandles.privateLookupIn(recordType, LOOKUP);
+            var components = recordType.getRecordComponents();
+            var parameterTypes = new Class<?>[components.length];
+            var writer = MethodHandles.empty(WRITER);
+            this.readers = new MethodHandle[components.length];
+            for (int i = components.length - 1; i >= 0; i--) {
+                var component = components[i];
+                parameterTypes[i] = component.getType();
+                var accessor = lookup.unreflect(component.getAccessor()).asType(MethodType.methodType(Object.class, Object.class));
+                writer = MethodHandles.foldArguments(writer, MethodHandles.filterArguments(writer(component), 1, accessor));
+                this.readers[i] = reader(component);
+            }
+            this.writer = writer;
+            this.constructor = lookup.findConstructor(recordType, MethodType.methodType(void.class, parameterTypes))
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalArgumentException("Cannot build a codec for " + recordType.getName(), exception);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <R extends Record> RecordCodec<R> of(Class<R> recordType) {
+        return (RecordCodec<R>) CACHE.get(recordType);
+    }
+
+    public static <R extends Record> RecordCodec<R> register(Class<R> recordType) {
+        var codec = of(recordType);
+        REGISTERED.put(recordType.getName(), codec);
+        return codec;
+    }
+
+    public static RecordCodec<?> registered(String recordTypeName) {
+        return REGISTERED.get(recordTypeName);
+    }
+
+    public void write(R record, ByteBuffer out) {
+        try {
+            this.writer.invokeExact(out, (Object) record);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Cannot write " + this.recordType.getName(), throwable);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public R read(ByteBuffer in) {
+        var values = new Object[this.readers.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (Object) this.readers[i].invokeExact(in);
+            }
+            return (R) (Object) this.constructor.invokeExact(values);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Cannot read " + this.recordType.getName(), throwable);
+        }
+    }
+
+    private static MethodHandle writer(RecordComponent component) throws ReflectiveOperationException {
+        return writer(component.getType(), component.getGenericType(), component.getName());
+    }
+
+    private static MethodHandle reader(RecordComponent component) throws ReflectiveOperationException {
+        return reader(component.getType(), component.getGenericType(), component.getName());
+    }
+
+    private static MethodHandle writer(Class<?> type, Type genericType, String name) throws ReflectiveOperationException {
+        if (type.isPrimitive()) {
+            return primitiveWriter(type, name).asType(WRITER);
+        }
+        var present = MethodHandles.foldArguments(referenceWriter(type, genericType, name).asType(WRITER), WRITE_TRUE);
+        var absent = MethodHandles.dropArguments(WRITE_FALSE, 1, Object.class);
+        var isNull = MethodHandles.dropArguments(IS_NULL, 0, ByteBuffer.class);
+        return MethodHandles.guardWithTest(isNull, absent, present);
+    }
+
+    private static MethodHandle reader(Class<?> type, Type genericType, String name) throws ReflectiveOperationException {
+        if (type.isPrimitive()) {
+            return primitiveReader(type, name).asType(READER);
+        }
+        var present = referenceReader(type, genericType, name).asType(READER);
+        var absent = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, ByteBuffer.class);
+        return MethodHandles.guardWithTest(READ_BOOLEAN, present, absent);
+    }
+
+    private static MethodHandle primitiveWriter(Class<?> type, String name) throws ReflectiveOperationException {
+        MethodHandle handle;
+        if (type == boolean.class) {
+            handle = virtual("writeBoolean", Boolean.class);
+        } else if (type == byte.class) {
+            handle = virtual("writeByte", byte.class);
+        } else if (type == short.class || type == int.class) {
+            handle = virtual("writeSignedVarInt", int.class);
+        } else if (type == char.class) {
+            handle = virtual("writeVarInt", int.class);
+        } else if (type == long.class) {
+            handle = virtual("writeSignedVarLong", long.class);
+        } else if (type == float.class) {
+            handle = virtual("writeFloat", float.class);
+        } else if (type == double.class) {
+            handle = virtual("writeDouble", double.class);
+        } else {
+            throw new IllegalArgumentException("Unsupported component " + name + " of type " + type.getName());
+        }
+        return MethodHandles.explicitCastArguments(handle, MethodType.methodType(void.class, ByteBuffer.class, type));
+    }
+
+    private static MethodHandle primitiveReader(Class<?> type, String name) throws ReflectiveOperationException {
+        MethodHandle handle;
+        if (type == boolean.class) {
+            handle = virtual("readBoolean");
+        } else if (type == byte.class) {
+            handle = virtual("readByte");
+        } else if (type == short.class || type == int.class) {
+            handle = virtual("readSignedVarInt");
+        } else if (type == char.class) {
+            handle = virtual("readVarInt");
+        } else if (type == long.class) {
+            handle = virtual("readSignedVarLong");
+        } else if (type == float.class) {
+            handle = virtual("readFloat");
+        } else if (type == double.class) {
+            handle = virtual("readDouble");
+        } else {
+            throw new IllegalArgumentException("Unsupported component " + name + " of type " + type.getName());
+        }
+        return MethodHandles.explicitCastArguments(handle, MethodType.methodType(type, ByteBuffer.class));
+    }
+
+    private static MethodHandle referenceWriter(Class<?> type, Type genericType, String name) throws ReflectiveOperationException {
+        var primitive = MethodType.methodType(type).unwrap().returnType();
+        if (primitive != type) {
+            return primitiveWriter(primitive, name);
+        }
+        if (type == String.class) {
+            return virtual("writeString", String.class);
+        }
+        if (type == UUID.class) {
+            return virtual("writeUUID", UUID.class);
+        }
+        if (type == ChannelIdentity.class) {
+            return virtual("writeChannelIdentity", ChannelIdentity.class);
+        }
+        if (type == JsonDocument.class) {
+            return LOOKUP.findStatic(JsonDocumentCodec.class, "write", MethodType.methodType(void.class, ByteBuffer.class, JsonDocument.class));
+        }
+        if (type.isEnum()) {
+            return virtual("writeEnum", Enum.class);
+        }
+        if (NettyPacket.class.isAssignableFrom(type)) {
+            return virtual("writePacket", NettyPacket.class);
+        }
+        if (type.isRecord()) {
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "writeRecord", MethodType.methodType(void.class, RecordCodec.class, ByteBuffer.class, Record.class)), 0, of(type.asSubclass(Record.class)));
+        }
+        if (type == int[].class) {
+            return virtual("writeIntArray", int[].class);
+        }
+        if (type == long[].class) {
+            return virtual("writeLongArray", long[].class);
+        }
+        if (type == double[].class) {
+            return virtual("writeDoubleArray", double[].class);
+        }
+        if (type == byte[].class) {
+            return LOOKUP.findStatic(RecordCodec.class, "writeBytes", MethodType.methodType(void.class, ByteBuffer.class, byte[].class));
+        }
+        if (type == List.class || type == Set.class || type == Collection.class) {
+            var element = typeArgument(genericType, 0, name);
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "writeCollection", MethodType.methodType(void.class, MethodHandle.class, ByteBuffer.class, Collection.class)), 0, writer(raw(element), element, name));
+        }
+        if (type == Map.class) {
+            var key = typeArgument(genericType, 0, name);
+            var value = typeArgument(genericType, 1, name);
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "writeMap", MethodType.methodType(void.class, MethodHandle.class, MethodHandle.class, ByteBuffer.class, Map.class)), 0, writer(raw(key), key, name), writer(raw(value), value, name));
+        }
+        throw new IllegalArgumentException("Unsupported component " + name + " of type " + type.getName());
+    }
+
+    private static MethodHandle referenceReader(Class<?> type, Type genericType, String name) throws ReflectiveOperationException {
+        var primitive = MethodType.methodType(type).unwrap().returnType();
+        if (primitive != type) {
+            return primitiveReader(primitive, name);
+        }
+        if (type == String.class) {
+            return virtual("readString");
+        }
+        if (type == UUID.class) {
+            return virtual("readUUID");
+        }
+        if (type == ChannelIdentity.class) {
+            return virtual("readChannelIdentity");
+        }
+        if (type == JsonDocument.class) {
+            return LOOKUP.findStatic(JsonDocumentCodec.class, "read", MethodType.methodType(JsonDocument.class, ByteBuffer.class));
+        }
+        if (type.isEnum()) {
+            return MethodHandles.insertArguments(LOOKUP.findVirtual(ByteBuffer.class, "readEnum", MethodType.methodType(Enum.class, Class.class)), 1, type);
+        }
+        if (NettyPacket.class.isAssignableFrom(type)) {
+            return virtual("readPacket");
+        }
+        if (type.isRecord()) {
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "readRecord", MethodType.methodType(Record.class, RecordCodec.class, ByteBuffer.class)), 0, of(type.asSubclass(Record.class)));
+        }
+        if (type == int[].class) {
+            return virtual("readIntArray");
+        }
+        if (type == long[].class) {
+            return virtual("readLongArray");
+        }
+        if (type == double[].class) {
+            return virtual("readDoubleArray");
+        }
+        if (type == byte[].class) {
+            return LOOKUP.findStatic(RecordCodec.class, "readBytes", MethodType.methodType(byte[].class, ByteBuffer.class));
+        }
+        if (type == List.class || type == Collection.class) {
+            var element = typeArgument(genericType, 0, name);
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "readList", MethodType.methodType(List.class, MethodHandle.class, ByteBuffer.class)), 0, reader(raw(element), element, name));
+        }
+        if (type == Set.class) {
+            var element = typeArgument(genericType, 0, name);
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "readSet", MethodType.methodType(Set.class, MethodHandle.class, ByteBuffer.class)), 0, reader(raw(element), element, name));
+        }
+        if (type == Map.class) {
+            var key = typeArgument(genericType, 0, name);
+            var value = typeArgument(genericType, 1, name);
+            return MethodHandles.insertArguments(LOOKUP.findStatic(RecordCodec.class, "readMap", MethodType.methodType(Map.class, MethodHandle.class, MethodHandle.class, ByteBuffer.class)), 0, reader(raw(key), key, name), reader(raw(value), value, name));
+        }
+        throw new IllegalArgumentException("Unsupported component " + name + " of type " + type.getName());
+    }
+
+    private static MethodHandle virtual(String name, Class<?>... parameterTypes) throws ReflectiveOperationException {
+        var method = ByteBuffer.class.getMethod(name, parameterTypes);
+        return LOOKUP.unreflect(method);
+    }
+
+    private static Type typeArgument(Type genericType, int index, String name) {
+        if (genericType instanceof ParameterizedType parameterizedType) {
+            var argument = parameterizedType.getActualTypeArguments()[index];
+            if (argument instanceof WildcardType wildcardType) {
+                argument = wildcardType.getUpperBounds()[0];
+            }
+            return argument;
+        }
+        throw new IllegalArgumentException("Raw component " + name + " is not supported");
+    }
+
+    private static Class<?> raw(Type type) {
+        if (type instanceof Class<?> clazz) {
+            return clazz;
+        }
+        if (type instanceof ParameterizedType parameterizedType) {
+            return (Class<?>) parameterizedType.getRawType();
+        }
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void writeRecord(RecordCodec codec, ByteBuffer out, Record record) {
+        codec.write(record, out);
+    }
+
+    private static Record readRecord(RecordCodec<?> codec, ByteBuffer in) {
+        return codec.read(in);
+    }
+
+    private static void writeBytes(ByteBuffer out, byte[] bytes) {
+        out.writeVarInt(bytes.length);
+        out.buffer().writeBytes(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        var bytes = new byte[readSize(in)];
+        in.buffer().readBytes(bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static void writeCollection(MethodHandle elementWriter, ByteBuffer out, Collection<?> collection) throws Throwable {
+        out.writeVarInt(collection.size());
+        for (var element : collection) {
+            elementWriter.invokeExact(out, (Object) element);
+        }
+    }
+
+    private static List<?> readList(MethodHandle elementReader, ByteBuffer in) throws Throwable {
+        var size = readSize(in);
+        var list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add((Object) elementReader.invokeExact(in));
+        }
+        return list;
+    }
+
+    private static Set<?> readSet(MethodHandle elementReader, ByteBuffer in) throws Throwable {
+        var size = readSize(in);
+        var set = new LinkedHashSet<>(size);
+        for (int i = 0; i < size; i++) {
+            set.add((Object) elementReader.invokeExact(in));
+        }
+        return set;
+    }
+
+    private static void writeMap(MethodHandle keyWriter, MethodHandle valueWriter, ByteBuffer out, Map<?, ?> map) throws Throwable {
+        out.writeVarInt(map.size());
+        for (var entry : map.entrySet()) {
+            keyWriter.invokeExact(out, (Object) entry.getKey());
+            valueWriter.invokeExact(out, (Object) entry.getValue());
+        }
+    }
+
+    private static Map<?, ?> readMap(MethodHandle keyReader, MethodHandle valueReader, ByteBuffer in) throws Throwable {
+        var size = readSize(in);
+        var map = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            map.put((Object) keyReader.invokeExact(in), (Object) valueReader.invokeExact(in));
+        }
+        return map;
+    }
+
+    private static int readSize(ByteBuffer in) {
+        var size = in.readVarInt();
+        if (size < 0 || size > in.buffer().readableBytes()) {
+            throw new IllegalStateException("Size " + size + " exceeds the readable bytes");
+        }
+        return size;
+    }
+}
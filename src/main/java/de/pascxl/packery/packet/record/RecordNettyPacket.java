@@ -0,0 +1,78 @@
+package de.pascxl.packery.packet.record;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.packet.NettyPacket;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.UUID;
+
+@Getter
+public class RecordNettyPacket extends NettyPacket {
+
+    private Record record;
+
+    public RecordNettyPacket() {
+    }
+
+    public RecordNettyPacket(@NonNull Record record) {
+        this.record = record;
+    }
+
+    public RecordNettyPacket(UUID uniqueId, @NonNull Record record) {
+        super(uniqueId);
+        this.record = record;
+    }
+
+    public <R extends Record> R record(Class<R> recordType) {
+        return recordType.isInstance(this.record) ? recordType.cast(this.record) : null;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void write(ByteBuffer out) {
+        if (this.record == null) {
+            throw new IllegalStateException("Cannot send RecordNettyPacket because Record is null");
+        }
+        var codec = RecordCodec.registered(this.record.getClass().getName());
+        if (codec == null) {
+            throw new IllegalStateException("Record type " + this.record.getClass().getName() + " is not registered");
+        }
+        out.writeTypeName(this.record.getClass().getName());
+        ((RecordCodec) codec).write(this.record, out);
+    }
+
+    @Override
+    public void read(ByteBuffer in) {
+        var recordTypeName = in.readTypeName();
+        var codec = RecordCodec.registered(recordTypeName);
+        if (codec == null) {
+            throw new IllegalStateException("Record type " + recordTypeName + " is not registered");
+        }
+        this.record = codec.read(in);
+    }
+}
@@ -0,0 +1,191 @@
+package de.pascxl.packery.processor;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+// Generates a <Name>_Flyweight for every @FixedLayout interface, getters read at fixed offsets in declaration order
+@SupportedAnnotationTypes(FlyweightProcessor.ANNOTATION)
+public class FlyweightProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "de.pascxl.packery.packet.flyweight.FixedLayout";
+    private static final String FLYWEIGHT_PACKET = "de.pascxl.packery.packet.flyweight.FlyweightPacket";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        var annotation = this.processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return true;
+        }
+        for (var element : roundEnvironment.getElementsAnnotatedWith(annotation)) {
+            try {
+                this.generate(element);
+            } catch (LayoutException exception) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, exception.getMessage(), exception.element);
+            } catch (IOException exception) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write flyweight: " + exception.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private void generate(Element element) throws IOException {
+        if (element.getKind() != ElementKind.INTERFACE) {
+            throw new LayoutException(element, "@FixedLayout can only be used on interfaces");
+        }
+        var type = (TypeElement) element;
+        if (type.getModifiers().contains(Modifier.PRIVATE) || !type.getTypeParameters().isEmpty() || !type.getInterfaces().isEmpty()
+                || type.getNestingKind() == NestingKind.LOCAL) {
+            throw new LayoutException(type, "@FixedLayout interfaces must be non-private, non-generic and must not extend other interfaces");
+        }
+
+        var packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        var flyweightName = this.flyweightName(type);
+
+        var accessors = new StringBuilder();
+        var offset = 0;
+        for (var method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.DEFAULT)) {
+                continue;
+            }
+            if (!method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()) {
+                throw new LayoutException(method, "@FixedLayout methods must be getters without parameters");
+            }
+            var kind = method.getReturnType().getKind();
+            var size = size(kind);
+            if (size == 0) {
+                throw new LayoutException(method, "@FixedLayout getters must return a primitive type, not " + method.getReturnType());
+            }
+            this.accessor(accessors, flyweightName, method, kind, offset);
+            offset += size;
+        }
+        if (offset == 0) {
+            throw new LayoutException(type, "@FixedLayout interfaces need at least one getter");
+        }
+
+        var code = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("@javax.annotation.processing.Generated(\"").append(FlyweightProcessor.class.getName()).append("\")\n");
+        code.append("public final class ").append(flyweightName).append(" extends ").append(FLYWEIGHT_PACKET)
+                .append(" implements ").append(type.getQualifiedName()).append(" {\n\n");
+        code.append("    public static final int SIZE = ").append(offset).append(";\n\n");
+        code.append("    public ").append(flyweightName).append("() {\n    }\n\n");
+        code.append("    private ").append(flyweightName).append("(int size) {\n        super(size);\n    }\n\n");
+        code.append("    public static ").append(flyweightName).append(" allocate() {\n");
+        code.append("        return new ").append(flyweightName).append("(SIZE);\n    }\n\n");
+        code.append("    @Override\n    public int size() {\n        return SIZE;\n    }\n");
+        code.append(accessors);
+        code.append("}\n");
+
+        var qualifiedName = packageName.isEmpty() ? flyweightName : packageName + "." + flyweightName;
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+
+    private void accessor(StringBuilder code, String flyweightName, ExecutableElement method, TypeKind kind, int offset) {
+        var name = method.getSimpleName().toString();
+        var type = method.getReturnType().toString();
+        var position = "this.offset() + " + offset;
+        var read = switch (kind) {
+            case BOOLEAN -> "this.buffer().getByte(" + position + ") != 0";
+            case BYTE -> "this.buffer().getByte(" + position + ")";
+            case SHORT -> "this.buffer().getShort(" + position + ")";
+            case CHAR -> "this.buffer().getChar(" + position + ")";
+            case INT -> "this.buffer().getInt(" + position + ")";
+            case LONG -> "this.buffer().getLong(" + position + ")";
+            case FLOAT -> "this.buffer().getFloat(" + position + ")";
+            default -> "this.buffer().getDouble(" + position + ")";
+        };
+        var write = switch (kind) {
+            case BOOLEAN -> "this.buffer().setByte(" + position + ", (byte) (value ? 1 : 0))";
+            case BYTE -> "this.buffer().setByte(" + position + ", value)";
+            case SHORT -> "this.buffer().setShort(" + position + ", value)";
+            case CHAR -> "this.buffer().setChar(" + position + ", value)";
+            case INT -> "this.buffer().setInt(" + position + ", value)";
+            case LONG -> "this.buffer().setLong(" + position + ", value)";
+            case FLOAT -> "this.buffer().setFloat(" + position + ", value)";
+            default -> "this.buffer().setDouble(" + position + ", value)";
+        };
+        code.append("\n    @Override\n    public ").append(type).append(' ').append(name).append("() {\n");
+        code.append("        return ").append(read).append(";\n    }\n\n");
+        code.append("    public ").append(flyweightName).append(' ').append(name).append('(').append(type).append(" value) {\n");
+        code.append("        ").append(write).append(";\n        return this;\n    }\n");
+    }
+
+    private static int size(TypeKind kind) {
+        return switch (kind) {
+            case BOOLEAN, BYTE -> Byte.BYTES;
+            case SHORT, CHAR -> Short.BYTES;
+            case INT, FLOAT -> Integer.BYTES;
+            case LONG, DOUBLE -> Long.BYTES;
+            default -> 0;
+        };
+    }
+
+    private String flyweightName(TypeElement type) {
+        var name = new StringBuilder(type.getSimpleName());
+        for (var enclosing = type.getEnclosingElement(); !(enclosing instanceof PackageElement); enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.append("_Flyweight").toString();
+    }
+
+    private static final class LayoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private LayoutException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package de.pascxl.packery.processor;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Generates a PacketCodec for every @GeneratedCodec packet from its non-static, non-transient fields in declaration order
+@SupportedAnnotationTypes(PacketCodecProcessor.ANNOTATION)
+public class PacketCodecProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "de.pascxl.packery.packet.codec.GeneratedCodec";
+    private static final String NETTY_PACKET = "de.pascxl.packery.packet.NettyPacket";
+    private static final String CODEC = "de.pascxl.packery.packet.codec.PacketCodec";
+    private static final String CODECS = "de.pascxl.packery.packet.codec.PacketCodecs";
+    private static final String PROVIDER = "de.pascxl.packery.packet.codec.PacketCodecProvider";
+    private static final String BYTE_BUFFER = "de.pascxl.packery.buffer.ByteBuffer";
+    private static final String CHANNEL_IDENTITY = "de.pascxl.packery.network.ChannelIdentity";
+    private static final String JSON_DOCUMENT = "de.golgolex.quala.json.document.JsonDocument";
+    private static final String JSON_CODEC = "de.pascxl.packery.packet.defaults.document.JsonDocumentCodec";
+    private static final String PROVIDER_NAME = "GeneratedPacketCodecProvider";
+
+    private final List<String> codecs = new ArrayList<>();
+    private String providerPackage;
+    private boolean providerWritten;
+    private int variables;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        var annotation = this.processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        var elements = annotation != null ? roundEnvironment.getElementsAnnotatedWith(annotation) : Set.<Element>of();
+        for (var element : elements) {
+            try {
+                this.generate(element);
+            } catch (CodecException exception) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, exception.getMessage(), exception.element);
+            } catch (IOException exception) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write codec: " + exception.getMessage(), element);
+            }
+        }
+        if (!this.providerWritten && !this.codecs.isEmpty() && (elements.isEmpty() || roundEnvironment.processingOver())) {
+            this.providerWritten = true;
+            try {
+                this.generateProvider();
+            } catch (IOException exception) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write codec provider: " + exception.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void generate(Element element) throws IOException {
+        if (element.getKind() != ElementKind.CLASS) {
+            throw new CodecException(element, "@GeneratedCodec can only be used on classes");
+        }
+        var type = (TypeElement) element;
+        if (!this.isAssignable(type.asType(), NETTY_PACKET)) {
+            throw new CodecException(type, "@GeneratedCodec classes must extend NettyPacket");
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getModifiers().contains(Modifier.PRIVATE)
+                || !type.getTypeParameters().isEmpty()
+                || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+            throw new CodecException(type, "@GeneratedCodec classes must be concrete, non-generic, non-private top level or static nested classes");
+        }
+        var constructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+                .filter(candidate -> candidate.getParameters().isEmpty())
+                .findFirst()
+                .orElseThrow(() -> new CodecException(type, "@GeneratedCodec classes need a no-argument constructor"));
+        if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new CodecException(constructor, "The no-argument constructor of a @GeneratedCodec class must not be private");
+        }
+
+        var packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        var packetName = type.getQualifiedName().toString();
+        var codecName = this.codecName(type);
+        var fields = this.fields(type, packageName);
+
+        var code = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("@javax.annotation.processing.Generated(\"").append(PacketCodecProcessor.class.getName()).append("\")\n");
+        code.append("public final class ").append(codecName).append(" implements ").append(CODEC).append('<').append(packetName).append("> {\n\n");
+        code.append("    @Override\n    public Class<").append(packetName).append("> packetClass() {\n        return ").append(packetName).append(".class;\n    }\n\n");
+        code.append("    @Override\n    public ").append(packetName).append(" create() {\n        return new ").append(packetName).append("();\n    }\n\n");
+        code.append("    @Override\n    public void write(").append(packetName).append(" packet, ").append(BYTE_BUFFER).append(" out) {\n");
+        for (var field : fields) {
+            this.write(code, "        ", field.asType(), "packet." + field.getSimpleName(), field.getSimpleName().toString(), this.nullable(field), field);
+        }
+        code.append("    }\n\n");
+        code.append("    @Override\n    public void read(").append(packetName).append(" packet, ").append(BYTE_BUFFER).append(" in) {\n");
+        for (var field : fields) {
+            this.read(code, "        ", field.asType(), "packet." + field.getSimpleName(), this.nullable(field), field);
+        }
+        code.append("    }\n}\n");
+
+        var qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+            writer.write(code.toString());
+        }
+        this.codecs.add(qualifiedCodecName);
+        if (this.providerPackage == null) {
+            this.providerPackage = packageName;
+        }
+    }
+
+    private void generateProvider() throws IOException {
+        var providerName = this.providerPackage.isEmpty() ? PROVIDER_NAME : this.providerPackage + "." + PROVIDER_NAME;
+        var code = new StringBuilder();
+        if (!this.providerPackage.isEmpty()) {
+            code.append("package ").append(this.providerPackage).append(";\n\n");
+        }
+        code.append("@javax.annotation.processing.Generated(\"").append(PacketCodecProcessor.class.getName()).append("\")\n");
+        code.append("public final class ").append(PROVIDER_NAME).append(" implements ").append(PROVIDER).append(" {\n\n");
+        code.append("    @Override\n    public java.util.Collection<").append(CODEC).append("<?>> codecs() {\n        return java.util.List.of(");
+        for (int i = 0; i < this.codecs.size(); i++) {
+            code.append(i == 0 ? "\n                " : ",\n                ").append("new ").append(this.codecs.get(i)).append("()");
+        }
+        code.append("\n        );\n    }\n}\n");
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(providerName).openWriter()) {
+            writer.write(code.toString());
+        }
+        try (Writer writer = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + PROVIDER).openWriter()) {
+            writer.write(providerName + "\n");
+        }
+    }
+
+    private List<VariableElement> fields(TypeElement type, String packageName) {
+        var hierarchy = new ArrayList<TypeElement>();
+        for (var current = type; current != null && !current.getQualifiedName().contentEquals(NETTY_PACKET); current = this.superclass(current)) {
+            hierarchy.add(0, current);
+        }
+        var fields = new ArrayList<VariableElement>();
+        for (var declaring : hierarchy) {
+            for (var field : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+                var modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (modifiers.contains(Modifier.FINAL)) {
+                    throw new CodecException(field, "Fields of @GeneratedCodec classes must not be final, mark it transient to skip it");
+                }
+                var samePackage = this.processingEnv.getElementUtils().getPackageOf(declaring).getQualifiedName().contentEquals(packageName);
+                if (modifiers.contains(Modifier.PRIVATE) || (!modifiers.contains(Modifier.PUBLIC) && !samePackage)) {
+                    throw new CodecException(field, "Fields of @GeneratedCodec classes must be accessible from package " + packageName + ", mark it transient to skip it");
+                }
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        var superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private void write(StringBuilder code, String indent, TypeMirror type, String expression, String name, boolean nullable, Element element) {
+        if (type.getKind().isPrimitive()) {
+            code.append(indent).append(this.writePrimitive(type.getKind(), expression, element)).append('\n');
+            return;
+        }
+        if (nullable) {
+            code.append(indent).append("if (").append(expression).append(" == null) {\n");
+            code.append(indent).append("    out.writeBoolean(false);\n");
+            code.append(indent).append("} else {\n");
+            code.append(indent).append("    out.writeBoolean(true);\n");
+            this.writeReference(code, indent + "    ", type, expression, name, element);
+            code.append(indent).append("}\n");
+            return;
+        }
+        code.append(indent).append("java.util.Objects.requireNonNull(").append(expression).append(", \"").append(name).append("\");\n");
+        this.writeReference(code, indent, type, expression, name, element);
+    }
+
+    private void writeReference(StringBuilder code, String indent, TypeMirror type, String expression, String name, Element element) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            var component = ((ArrayType) type).getComponentType().getKind();
+            switch (component) {
+                case INT -> code.append(indent).append("out.writeIntArray(").append(expression).append(");\n");
+                case LONG -> code.append(indent).append("out.writeLongArray(").append(expression).append(");\n");
+                case DOUBLE -> code.append(indent).append("out.writeDoubleArray(").append(expression).append(");\n");
+                case BYTE -> {
+                    code.append(indent).append("out.writeVarInt(").append(expression).append(".length);\n");
+                    code.append(indent).append("out.buffer().writeBytes(").append(expression).append(");\n");
+                }
+                default -> throw new CodecException(element, "Unsupported array type " + type);
+            }
+            return;
+        }
+        var unboxed = this.unboxed(type);
+        if (unboxed != null) {
+            code.append(indent).append(this.writePrimitive(unboxed.getKind(), expression, element)).append('\n');
+            return;
+        }
+        var erasure = this.erasure(type);
+        switch (erasure) {
+            case "java.lang.String" -> code.append(indent).append("out.writeString(").append(expression).append(");\n");
+            case "java.util.UUID" -> code.append(indent).append("out.writeUUID(").append(expression).append(");\n");
+            case CHANNEL_IDENTITY -> code.append(indent).append("out.writeChannelIdentity(").append(expression).append(");\n");
+            case JSON_DOCUMENT -> code.append(indent).append(JSON_CODEC).append(".write(out, ").append(expression).append(");\n");
+            default -> {
+                if (this.isEnum(type)) {
+                    code.append(indent).append("out.writeEnum(").append(expression).append(");\n");
+                } else if (this.isAssignable(type, NETTY_PACKET)) {
+                    code.append(indent).append("out.writePacket(").append(expression).append(");\n");
+                } else if (this.isCollection(erasure)) {
+                    var variable = this.variable("element");
+                    code.append(indent).append("out.writeVarInt(").append(expression).append(".size());\n");
+                    code.append(indent).append("for (var ").append(variable).append(" : ").append(expression).append(") {\n");
+                    this.write(code, indent + "    ", this.typeArgument(type, 0, element), variable, name + " element", true, element);
+                    code.append(indent).append("}\n");
+                } else if (this.isMap(erasure)) {
+                    var variable = this.variable("entry");
+                    code.append(indent).append("out.writeVarInt(").append(expression).append(".size());\n");
+                    code.append(indent).append("for (var ").append(variable).append(" : ").append(expression).append(".entrySet()) {\n");
+                    this.write(code, indent + "    ", this.typeArgument(type, 0, element), variable + ".getKey()", name + " key", true, element);
+                    this.write(code, indent + "    ", this.typeArgument(type, 1, element), variable + ".getValue()", name + " value", true, element);
+                    code.append(indent).append("}\n");
+                } else {
+                    throw new CodecException(element, "Unsupported field type " + type);
+                }
+            }
+        }
+    }
+
+    private String writePrimitive(TypeKind kind, String expression, Element element) {
+        return switch (kind) {
+            case BOOLEAN -> "out.writeBoolean(" + expression + ");";
+            case BYTE -> "out.writeByte(" + expression + ");";
+            case SHORT, INT -> "out.writeSignedVarInt(" + expression + ");";
+            case CHAR -> "out.writeVarInt(" + expression + ");";
+            case LONG -> "out.writeSignedVarLong(" + expression + ");";
+            case FLOAT -> "out.writeFloat(" + expression + ");";
+            case DOUBLE -> "out.writeDouble(" + expression + ");";
+            default -> throw new CodecException(element, "Unsupported primitive type " + kind);
+        };
+    }
+
+    private void read(StringBuilder code, String indent, TypeMirror type, String target, boolean nullable, Element element) {
+        if (type.getKind().isPrimitive()) {
+            code.append(indent).append(target).append(" = ").append(this.readPrimitive(type.getKind(), element)).append(";\n");
+            return;
+        }
+        if (nullable) {
+            code.append(indent).append("if (in.readBoolean()) {\n");
+            this.readReference(code, indent + "    ", type, target, element);
+            code.append(indent).append("} else {\n");
+            code.append(indent).append("    ").append(target).append(" = null;\n");
+            code.append(indent).append("}\n");
+            return;
+        }
+        this.readReference(code, indent, type, target, element);
+    }
+
+    private void readReference(StringBuilder code, String indent, TypeMirror type, String target, Element element) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            var component = ((ArrayType) type).getComponentType().getKind();
+            switch (component) {
+                case INT -> code.append(indent).append(target).append(" = in.readIntArray();\n");
+                case LONG -> code.append(indent).append(target).append(" = in.readLongArray();\n");
+                case DOUBLE -> code.append(indent).append(target).append(" = in.readDoubleArray();\n");
+                case BYTE -> {
+                    var variable = this.variable("bytes");
+                    code.append(indent).append("var ").append(variable).append(" = new byte[").append(CODECS).append(".readSize(in)];\n");
+                    code.append(indent).append("in.buffer().readBytes(").append(variable).append(", 0, ").append(variable).append(".length);\n");
+                    code.append(indent).append(target).append(" = ").append(variable).append(";\n");
+                }
+                default -> throw new CodecException(element, "Unsupported array type " + type);
+            }
+            return;
+        }
+        var unboxed = this.unboxed(type);
+        if (unboxed != null) {
+            code.append(indent).append(target).append(" = ").append(this.readPrimitive(unboxed.getKind(), element)).append(";\n");
+            return;
+        }
+        var erasure = this.erasure(type);
+        switch (erasure) {
+            case "java.lang.String" -> code.append(indent).append(target).append(" = in.readString();\n");
+            case "java.util.UUID" -> code.append(indent).append(target).append(" = in.readUUID();\n");
+            case CHANNEL_IDENTITY -> code.append(indent).append(target).append(" = in.readChannelIdentity();\n");
+            case JSON_DOCUMENT -> code.append(indent).append(target).append(" = ").append(JSON_CODEC).append(".read(in);\n");
+            default -> {
+                if (this.isEnum(type)) {
+                    code.append(indent).append(target).append(" = in.readEnum(").append(erasure).append(".class);\n");
+                } else if (this.isAssignable(type, NETTY_PACKET)) {
+                    code.append(indent).append("try {\n");
+                    code.append(indent).append("    ").append(target).append(" = (").append(erasure).append(") in.readPacket();\n");
+                    code.append(indent).append("} catch (ClassNotFoundException exception) {\n");
+                    code.append(indent).append("    throw new IllegalStateException(exception);\n");
+                    code.append(indent).append("}\n");
+                } else if (this.isCollection(erasure)) {
+                    var elementType = this.typeArgument(type, 0, element);
+                    var collection = this.variable("collection");
+                    var size = this.variable("size");
+                    var value = this.variable("value");
+                    code.append(indent).append("var ").append(size).append(" = ").append(CODECS).append(".readSize(in);\n");
+                    code.append(indent).append("var ").append(collection).append(" = new ").append(this.collectionImplementation(erasure, element))
+                            .append('<').append(this.typeName(elementType)).append(">(").append(size).append(");\n");
+                    var index = this.variable("i");
+                    code.append(indent).append("for (int ").append(index).append(" = 0; ").append(index).append(" < ").append(size).append("; ").append(index).append("++) {\n");
+                    code.append(indent).append("    ").append(this.typeName(elementType)).append(' ').append(value).append(";\n");
+                    this.read(code, indent + "    ", elementType, value, true, element);
+                    code.append(indent).append("    ").append(collection).append(".add(").append(value).append(");\n");
+                    code.append(indent).append("}\n");
+                    code.append(indent).append(target).append(" = ").append(collection).append(";\n");
+                } else if (this.isMap(erasure)) {
+                    var keyType = this.typeArgument(type, 0, element);
+                    var valueType = this.typeArgument(type, 1, element);
+                    var map = this.variable("map");
+                    var size = this.variable("size");
+                    var key = this.variable("key");
+                    var value = this.variable("value");
+                    code.append(indent).append("var ").append(size).append(" = ").append(CODECS).append(".readSize(in);\n");
+                    code.append(indent).append("var ").append(map).append(" = new java.util.").append(erasure.equals("java.util.HashMap") ? "HashMap" : "LinkedHashMap")
+                            .append('<').append(this.typeName(keyType)).append(", ").append(this.typeName(valueType)).append(">();\n");
+                    var index = this.variable("i");
+                    code.append(indent).append("for (int ").append(index).append(" = 0; ").append(index).append(" < ").append(size).append("; ").append(index).append("++) {\n");
+                    code.append(indent).append("    ").append(this.typeName(keyType)).append(' ').append(key).append(";\n");
+                    code.append(indent).append("    ").append(this.typeName(valueType)).append(' ').append(value).append(";\n");
+                    this.read(code, indent + "    ", keyType, key, true, element);
+                    this.read(code, indent + "    ", valueType, value, true, element);
+                    code.append(indent).append("    ").append(map).append(".put(").append(key).append(", ").append(value).append(");\n");
+                    code.append(indent).append("}\n");
+                    code.append(indent).append(target).append(" = ").append(map).append(";\n");
+                } else {
+                    throw new CodecException(element, "Unsupported field type " + type);
+                }
+            }
+        }
+    }
+
+    private String readPrimitive(TypeKind kind, Element element) {
+        return switch (kind) {
+            case BOOLEAN -> "in.readBoolean()";
+            case BYTE -> "in.readByte()";
+            case SHORT -> "(short) in.readSignedVarInt()";
+            case INT -> "in.readSignedVarInt()";
+            case CHAR -> "(char) in.readVarInt()";
+            case LONG -> "in.readSignedVarLong()";
+            case FLOAT -> "in.readFloat()";
+            case DOUBLE -> "in.readDouble()";
+            default -> throw new CodecException(element, "Unsupported primitive type " + kind);
+        };
+    }
+
+    private String collectionImplementation(String erasure, Element element) {
+        return switch (erasure) {
+            case "java.util.Collection", "java.util.List", "java.util.ArrayList" -> "java.util.ArrayList";
+            case "java.util.Set", "java.util.LinkedHashSet" -> "java.util.LinkedHashSet";
+            case "java.util.HashSet" -> "java.util.HashSet";
+            default -> throw new CodecException(element, "Unsupported collection type " + erasure);
+        };
+    }
+
+    private boolean isCollection(String erasure) {
+        return switch (erasure) {
+            case "java.util.Collection", "java.util.List", "java.util.ArrayList", "java.util.Set", "java.util.LinkedHashSet", "java.util.HashSet" -> true;
+            default -> false;
+        };
+    }
+
+    private boolean isMap(String erasure) {
+        return erasure.equals("java.util.Map") || erasure.equals("java.util.HashMap") || erasure.equals("java.util.LinkedHashMap");
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private boolean isAssignable(TypeMirror type, String className) {
+        var target = this.processingEnv.getElementUtils().getTypeElement(className);
+        var types = this.processingEnv.getTypeUtils();
+        return target != null && types.isAssignable(types.erasure(type), types.erasure(target.asType()));
+    }
+
+    private TypeMirror unboxed(TypeMirror type) {
+        try {
+            return this.processingEnv.getTypeUtils().unboxedType(type);
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    private boolean nullable(VariableElement field) {
+        return field.getAnnotationMirrors().stream()
+                .noneMatch(mirror -> mirror.getAnnotationType().asElement().getSimpleName().contentEquals("NonNull"));
+    }
+
+    private TypeMirror typeArgument(TypeMirror type, int index, Element element) {
+        var arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() <= index) {
+            throw new CodecException(element, "Raw type " + type + " is not supported");
+        }
+        var argument = arguments.get(index);
+        if (argument.getKind() == TypeKind.WILDCARD) {
+            var bound = ((WildcardType) argument).getExtendsBound();
+            if (bound == null) {
+                throw new CodecException(element, "Unbounded wildcard in " + type + " is not supported");
+            }
+            return bound;
+        }
+        return argument;
+    }
+
+    private String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return this.typeName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.getKind().isPrimitive() ? type.getKind().name().toLowerCase() : type.toString();
+        }
+        var declared = (DeclaredType) type;
+        var name = new StringBuilder(this.erasure(type));
+        if (!declared.getTypeArguments().isEmpty()) {
+            name.append('<');
+            for (int i = 0; i < declared.getTypeArguments().size(); i++) {
+                var argument = declared.getTypeArguments().get(i);
+                if (argument.getKind() == TypeKind.WILDCARD) {
+                    var bound = ((WildcardType) argument).getExtendsBound();
+                    argument = bound != null ? bound : this.processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType();
+                }
+                name.append(i == 0 ? "" : ", ").append(this.typeName(argument));
+            }
+            name.append('>');
+        }
+        return name.toString();
+    }
+
+    private String erasure(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.toString();
+        }
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    private String codecName(TypeElement type) {
+        var name = new StringBuilder(type.getSimpleName());
+        for (var enclosing = type.getEnclosingElement(); !(enclosing instanceof PackageElement); enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.append("_Codec").toString();
+    }
+
+    private String variable(String prefix) {
+        return prefix + this.variables++;
+    }
+
+    private static final class CodecException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private CodecException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
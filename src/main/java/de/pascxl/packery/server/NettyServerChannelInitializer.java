@@ -28,6 +28,9 @@ import com.github.golgolex.eventum.EventManager;
 import de.pascxl.packery.events.ChannelInitEvent;
 import de.pascxl.packery.network.codec.PacketClassDecoder;
 import de.pascxl.packery.network.codec.PacketClassEncoder;
+import de.pascxl.packery.network.codec.PacketCodecContext;
+import de.pascxl.packery.network.codec.PacketFrameDecoder;
+import de.pascxl.packery.network.codec.PacketFrameEncoder;
 import io.netty5.channel.Channel;
 import io.netty5.channel.ChannelInitializer;
 
@@ -45,9 +48,12 @@ public class NettyServerChannelInitializer extends ChannelInitializer<Channel> {
     protected void initChannel(Channel ch) throws Exception {
         this.nettyServerHandler.unauthenticated().add(ch);
 
+        var codecContext = new PacketCodecContext(this.server.packetManager);
         ch.pipeline().addLast(
-                new PacketClassDecoder(this.server.packetManager, this.server.name),
-                new PacketClassEncoder(this.server.packetManager, this.server.name),
+                new PacketFrameDecoder(),
+                new PacketFrameEncoder(this.server.packetManager.flushWindowNanos(), this.server.packetManager.maxBatchSize()),
+                new PacketClassDecoder(this.server.packetManager, this.server.name, codecContext),
+                new PacketClassEncoder(this.server.packetManager, this.server.name, codecContext),
                 nettyServerHandler
         );
 
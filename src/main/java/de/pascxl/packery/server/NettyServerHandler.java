@@ -26,10 +26,13 @@ package de.pascxl.packery.server;
 
 import de.golgolex.quala.scheduler.Scheduler;
 import de.pascxl.packery.Packery;
+import de.pascxl.packery.internal.NettyPacketOutAllowedPackets;
 import de.pascxl.packery.internal.NettyPacketOutAuthentication;
 import de.pascxl.packery.internal.NettyPacketOutIdentityActive;
 import de.pascxl.packery.internal.NettyPacketOutIdentityInactive;
+import de.pascxl.packery.network.ChannelIdentity;
 import de.pascxl.packery.network.NettyTransmitter;
+import de.pascxl.packery.network.codec.PacketBatch;
 import de.pascxl.packery.packet.NettyPacket;
 import de.pascxl.packery.packet.defaults.relay.RoutingNettyPacket;
 import de.pascxl.packery.packet.defaults.relay.RoutingResultReplyPacket;
@@ -57,12 +60,19 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<NettyPacket>
 
     @Override
     protected void messageReceived(ChannelHandlerContext ctx, NettyPacket msg) throws Exception {
-        Packery.debug(Level.INFO, this.getClass(), "messageReceived: " + msg.getClass().getSimpleName());
+        if (Packery.DEV_MODE) {
+            Packery.debug(Level.INFO, this.getClass(), "messageReceived: " + msg.getClass().getSimpleName());
+        }
 
         if (msg instanceof NettyPacketOutAuthentication authPacket) {
             if (unauthenticated.stream().anyMatch(channel -> channel.remoteAddress().equals(ctx.channel().remoteAddress()))) {
                 unauthenticated.removeIf(channel -> channel.remoteAddress().equals(ctx.channel().remoteAddress()));
-                var authenticatedTransmitter = new NettyTransmitter(authPacket.channelIdentity(), ctx.channel());
+                var authenticatedTransmitter = new NettyTransmitter(authPacket.channelIdentity(), ctx.channel(), this.server.packetManager);
+                if (authPacket.allowedPackets() != null) {
+                    authenticatedTransmitter.remoteAdmission(this.server.packetManager.remoteAdmission(authPacket.allowedPackets()));
+                }
+                this.server.packetManager.addPeer(authenticatedTransmitter);
+                ctx.channel().writeAndFlush(new NettyPacketOutAuthentication(new ChannelIdentity(this.server.name, Packery.SYSTEM_UUID), this.server.packetManager.packetRegistry().table(), this.server.packetManager.allowedPackets()));
 
                 var otherIdentities = this.transmitters.stream().map(NettyTransmitter::channelIdentity).toList();
                 Packery.debug(Level.INFO, this.getClass(), "Sending " + otherIdentities.size() + " to " + authPacket.channelIdentity());
@@ -79,41 +89,83 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<NettyPacket>
             return;
         }
 
+        if (msg instanceof NettyPacketOutAllowedPackets allowedPackets) {
+            var transmitter = this.transmitter(ctx);
+            if (transmitter != null && transmitter.remoteAdmission() != null) {
+                transmitter.remoteAdmission(this.server.packetManager.remoteAdmission(transmitter.remoteAdmission(), allowedPackets.packets(), allowedPackets.allowed()));
+            }
+            return;
+        }
+
         if (msg instanceof RoutingNettyPacket routingPacket) {
             Packery.debug(Level.INFO, this.getClass(), "Received RelayPacket: " + routingPacket.getClass().getSimpleName() + " to: " + routingPacket.to() + " Transmitters: " + this.transmitters.size());
+            // the envelope is closed when this method returns, the scheduled task owns the relayed body
+            var to = routingPacket.to();
+            var uniqueId = routingPacket.uniqueId();
+            var relayed = routingPacket.relay();
 
             Scheduler.runtimeScheduler().schedule(() -> {
                 transmitters.stream()
-                        .filter(transmitter -> transmitter.channelIdentity().equals(routingPacket.to()))
+                        .filter(transmitter -> transmitter.channelIdentity().equals(to))
                         .findFirst()
                         .ifPresentOrElse(transmitter -> {
-                            Packery.debug(Level.INFO, this.getClass(), "Send Packet RelayPacket: " + routingPacket.getClass().getSimpleName());
-                            transmitter.sendPacketSync(routingPacket.packet());
+                            Packery.debug(Level.INFO, this.getClass(), "Send Packet RelayPacket: " + relayed.packetName());
+                            transmitter.sendPacketSync(relayed);
                             ctx.channel().writeAndFlush(
-                                    new RoutingResultReplyPacket(routingPacket.uniqueId(), RoutingResult.SUCCESS));
+                                    new RoutingResultReplyPacket(uniqueId, RoutingResult.SUCCESS));
                         }, () -> {
-                            Packery.debug(Level.INFO, this.getClass(), "No Channel with Id: " + routingPacket.to() + " found.");
+                            Packery.debug(Level.INFO, this.getClass(), "No Channel with Id: " + to + " found.");
+                            relayed.close();
                             ctx.channel().writeAndFlush(
-                                    new RoutingResultReplyPacket(routingPacket.uniqueId(), RoutingResult.FAILED_NO_CLIENT));
+                                    new RoutingResultReplyPacket(uniqueId, RoutingResult.FAILED_NO_CLIENT));
                         });
             }, 100);
 
             return;
         }
 
-        this.transmitters
-                .stream()
-                .filter(transmitters -> transmitters
-                        .channel()
-                        .remoteAddress()
-                        .equals(ctx
-                                .channel()
-                                .remoteAddress()))
-                .findFirst()
-                .ifPresentOrElse(
-                        transmitter -> this.server.packetManager.call(msg, transmitter, ctx, transmitter.channelIdentity()),
-                        () -> Packery.debug(Level.SEVERE, this.getClass(), "No PacketSender found. Packet: " + msg.getClass().getSimpleName())
-                );
+        var transmitter = this.transmitter(ctx);
+        if (transmitter == null) {
+            Packery.debug(Level.SEVERE, this.getClass(), "No PacketSender found. Packet: " + msg.getClass().getSimpleName());
+            return;
+        }
+        this.server.packetManager.call(msg, transmitter, ctx, transmitter.channelIdentity());
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof PacketBatch batch)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+        // control packets run on their own in batch order, the packets between them are delivered as sub-batches
+        var transmitter = this.transmitter(ctx);
+        var start = 0;
+        for (var index = 0; index < batch.size(); index++) {
+            var packet = batch.get(index);
+            if (transmitter == null || packet instanceof NettyPacketOutAuthentication || packet instanceof NettyPacketOutAllowedPackets || packet instanceof RoutingNettyPacket) {
+                this.call(ctx, batch, start, index, transmitter);
+                this.messageReceived(ctx, packet);
+                transmitter = this.transmitter(ctx);
+                start = index + 1;
+            }
+        }
+        this.call(ctx, batch, start, batch.size(), transmitter);
+    }
+
+    private void call(ChannelHandlerContext ctx, PacketBatch batch, int from, int to, NettyTransmitter transmitter) {
+        if (from < to) {
+            this.server.packetManager.call(from == 0 && to == batch.size() ? batch : batch.subList(from, to), transmitter, ctx, transmitter.channelIdentity());
+        }
+    }
+
+    private NettyTransmitter transmitter(ChannelHandlerContext ctx) {
+        for (var transmitter : this.transmitters) {
+            if (transmitter.channel().remoteAddress().equals(ctx.channel().remoteAddress())) {
+                return transmitter;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -127,7 +179,13 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<NettyPacket>
                     Packery.debug(Level.INFO, this.getClass(), "Send PacketOutIdentityInit for " + ctx.channel().remoteAddress() + " to " + transmitter.channelIdentity().namespace() + "#" + transmitter.channelIdentity().uniqueId());
                 }
             }
-            transmitters.removeIf(nettyTransmitter -> nettyTransmitter.channel().remoteAddress().equals(ctx.channel().remoteAddress()));
+            transmitters.removeIf(nettyTransmitter -> {
+                if (nettyTransmitter.channel().remoteAddress().equals(ctx.channel().remoteAddress())) {
+                    this.server.packetManager.removePeer(nettyTransmitter);
+                    return true;
+                }
+                return false;
+            });
             ctx.close();
         }
     }
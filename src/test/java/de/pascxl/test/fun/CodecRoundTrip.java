@@ -0,0 +1,306 @@
+package de.pascxl.test.fun;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.golgolex.quala.json.document.JsonDocument;
+import de.pascxl.packery.buffer.ByteBuffer;
+import de.pascxl.packery.network.ChannelIdentity;
+import de.pascxl.packery.network.codec.PacketClassDecoder;
+import de.pascxl.packery.network.codec.PacketClassEncoder;
+import de.pascxl.packery.network.codec.PacketCodecContext;
+import de.pascxl.packery.network.codec.PacketFrameDecoder;
+import de.pascxl.packery.network.codec.PacketFrameEncoder;
+import de.pascxl.packery.packet.PacketManager;
+import de.pascxl.packery.packet.codec.PacketCodecs;
+import de.pascxl.packery.packet.defaults.document.JsonNettyPacket;
+import de.pascxl.packery.packet.flyweight.FlyweightPacket;
+import de.pascxl.test.fun.codec.TestCodecNettyPacket;
+import de.pascxl.test.fun.codec.TestPosition_Flyweight;
+import io.netty5.buffer.Buffer;
+import io.netty5.buffer.BufferAllocator;
+import io.netty5.channel.ChannelHandler;
+import io.netty5.channel.ChannelHandlerContext;
+import io.netty5.channel.embedded.EmbeddedChannel;
+import io.netty5.handler.codec.TooLongFrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+// Round trips through the wire codecs on embedded channels, exits with an AssertionError on the first mismatch
+public class CodecRoundTrip {
+
+    private static final BufferAllocator ALLOCATOR = BufferAllocator.onHeapUnpooled();
+
+    public static void main(String[] args) {
+        frames();
+        varInts();
+        strings();
+        dictionary();
+        json();
+        generatedCodec();
+        flyweight();
+        System.out.println("codec round trips passed");
+    }
+
+    private static void frames() {
+        // 127/128, 16383/16384 and 2097151/2097152 are the one/two/three/four byte varint edges, the last ones exceed the batch size
+        for (var length : new int[]{1, 127, 128, 16383, 16384, 2097151, 2097152}) {
+            var encoder = new EmbeddedChannel(new PacketFrameEncoder());
+            var payload = ALLOCATOR.allocate(length);
+            for (int i = 0; i < length; i++) {
+                payload.writeByte((byte) i);
+            }
+            encoder.writeAndFlush(payload);
+            encoder.runPendingTasks();
+            var wire = drain(encoder);
+            check(wire.readableBytes() == ByteBuffer.varIntSize(length) + length, "frame " + length + " has a " + ByteBuffer.varIntSize(length) + " byte header");
+
+            var decoder = new EmbeddedChannel(new PacketFrameDecoder());
+            // split inside the length header and the payload
+            while (wire.readableBytes() > 0) {
+                decoder.writeInbound(wire.readSplit(Math.min(wire.readableBytes(), length < 20000 ? 1 : 65536)));
+            }
+            wire.close();
+            try (Buffer frame = decoder.readInbound()) {
+                check(frame != null && frame.readableBytes() == length, "frame " + length + " decoded");
+                for (int i = 0; i < length; i++) {
+                    if (frame.readByte() != (byte) i) {
+                        throw new AssertionError("frame " + length + " differs at " + i);
+                    }
+                }
+            }
+            check(decoder.readInbound() == null, "frame " + length + " decoded once");
+        }
+
+        var encoder = new EmbeddedChannel(new PacketFrameEncoder());
+        for (int i = 0; i < 3; i++) {
+            encoder.write(ALLOCATOR.allocate(4).writeInt(i));
+        }
+        encoder.flush();
+        encoder.runPendingTasks();
+        var wire = drain(encoder);
+        check(wire.getByte(0) == 0, "small frames are batched");
+        var decoder = new EmbeddedChannel(new PacketFrameDecoder());
+        decoder.writeInbound(wire);
+        for (int i = 0; i < 3; i++) {
+            try (Buffer frame = decoder.readInbound()) {
+                check(frame.readInt() == i, "batch entry " + i);
+            }
+        }
+
+        var limited = new EmbeddedChannel(new PacketFrameDecoder(1024));
+        var header = ALLOCATOR.allocate(2);
+        new ByteBuffer(header).writeVarInt(1025);
+        try {
+            limited.writeInbound(header);
+            throw new AssertionError("oversized frame accepted");
+        } catch (TooLongFrameException exception) {
+            check(true, "oversized frame rejected");
+        }
+    }
+
+    private static void varInts() {
+        var byteBuffer = new ByteBuffer(ALLOCATOR.allocate(0));
+        int[] ints = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long[] longs = {0, 127, 128, -1, 1L << 35, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (var value : ints) {
+            byteBuffer.writeVarInt(value).writeSignedVarInt(value);
+        }
+        for (var value : longs) {
+            byteBuffer.writeVarLong(value).writeSignedVarLong(value);
+        }
+        for (var value : ints) {
+            var readable = byteBuffer.buffer().readableBytes();
+            check(byteBuffer.readVarInt() == value && readable - byteBuffer.buffer().readableBytes() == ByteBuffer.varIntSize(value), "varint " + value);
+            check(byteBuffer.readSignedVarInt() == value, "signed varint " + value);
+        }
+        for (var value : longs) {
+            check(byteBuffer.readVarLong() == value && byteBuffer.readSignedVarLong() == value, "varlong " + value);
+        }
+        check(byteBuffer.buffer().readableBytes() == 0, "varints fully consumed");
+        byteBuffer.buffer().close();
+    }
+
+    private static void strings() {
+        var samples = List.of("", "ascii", "äöü ß €", "emoji 😀 pair", "lone \uD800 surrogate", "x".repeat(20000), "ü".repeat(9000));
+        for (var composite : List.of(false, true)) {
+            var buffer = composite ? ALLOCATOR.compose(List.of(ALLOCATOR.allocate(5).send(), ALLOCATOR.allocate(7).send())) : ALLOCATOR.allocate(3);
+            var byteBuffer = new ByteBuffer(buffer);
+            samples.forEach(byteBuffer::writeString);
+            for (var sample : samples) {
+                var utf8 = sample.getBytes(StandardCharsets.UTF_8);
+                check(ByteBuffer.utf8Length(sample) == utf8.length, "utf-8 length of " + sample.length() + " chars");
+                check(byteBuffer.readString().equals(new String(utf8, StandardCharsets.UTF_8)), "utf-8 string of " + sample.length() + " chars, composite " + composite);
+            }
+            buffer.close();
+        }
+    }
+
+    private static void dictionary() {
+        var origin = new ChannelIdentity("service", UUID.randomUUID());
+        var referenced = new int[2];
+        var dictionarySizes = new int[]{0, 64};
+        for (int size = 0; size < dictionarySizes.length; size++) {
+            var out = channel(manager(dictionarySizes[size]));
+            var in = channel(manager(dictionarySizes[size]));
+            var sizes = new int[3];
+            for (int i = 0; i < sizes.length; i++) {
+                out.writeOutbound(sample(i, origin));
+                var wire = drain(out);
+                sizes[i] = wire.readableBytes();
+                in.writeInbound(wire);
+                TestCodecNettyPacket packet = in.readInbound();
+                check(packet != null && packet.origin().equals(origin), "dictionary " + dictionarySizes[size] + " packet " + i);
+            }
+            // the first packet also defines the type name, later ones only differ in the identity encoding
+            check(sizes[1] == sizes[2] && sizes[1] < sizes[0], "dictionary " + dictionarySizes[size] + " frame sizes " + Arrays.toString(sizes));
+            referenced[size] = sizes[1];
+        }
+        check(referenced[1] < referenced[0], "dictionary reference is shorter than the inline identity, " + referenced[1] + " < " + referenced[0]);
+    }
+
+    private static void json() {
+        var jsonDocument = new JsonDocument();
+        jsonDocument.write("name", "packery");
+        jsonDocument.write("count", 42);
+        jsonDocument.write("big", -9000000000L);
+        jsonDocument.write("ratio", 0.1);
+        jsonDocument.write("unicode", "ü 😀");
+        var nested = new JsonDocument();
+        nested.write("flag", true);
+        jsonDocument.write("nested", nested.jsonObject());
+
+        var sender = manager(0);
+        var out = channel(sender);
+        var eager = channel(manager(0));
+        out.writeOutbound(new JsonNettyPacket(jsonDocument));
+        var wire = drain(out);
+        var binary = wire.readableBytes();
+        eager.writeInbound(wire);
+        JsonNettyPacket decoded = eager.readInbound();
+        check(decoded.decoded() && decoded.jsonDocument().jsonObject().equals(jsonDocument.jsonObject()), "json binary round trip in " + binary + " bytes");
+
+        var lazyManager = manager(0);
+        lazyManager.lazyJsonDecoding(true);
+        var lazy = channel(lazyManager);
+        // a fresh connection, the receiver has to see the type definition again
+        var lazyOut = channel(sender);
+        lazyOut.writeOutbound(new JsonNettyPacket(jsonDocument));
+        lazy.writeInbound(drain(lazyOut));
+        JsonNettyPacket undecoded = lazy.readInbound();
+        check(!undecoded.decoded(), "lazy json stays undecoded");
+        check(undecoded.member("big").getAsLong() == -9000000000L && undecoded.member("missing") == null
+                && undecoded.member("nested").equals(decoded.jsonDocument().jsonObject().get("nested")) && !undecoded.decoded(), "lazy member peeks");
+
+        // relaying writes the raw payload back out without decoding it
+        var relay = channel(lazyManager);
+        relay.writeOutbound(undecoded);
+        var relayed = drain(relay);
+        check(!undecoded.decoded() && relayed.readableBytes() == binary, "lazy relay is byte identical");
+        eager.writeInbound(relayed);
+        JsonNettyPacket target = eager.readInbound();
+        check(target.jsonDocument().jsonObject().equals(jsonDocument.jsonObject()), "lazy relay decodes on the target");
+        check(undecoded.jsonDocument().jsonObject().equals(jsonDocument.jsonObject()) && undecoded.decoded(), "lazy json decodes on demand");
+    }
+
+    private static void generatedCodec() {
+        check(PacketCodecs.codec(TestCodecNettyPacket.class) != null, "generated codec registered");
+        var out = channel(manager(16));
+        var in = channel(manager(16));
+        var origin = new ChannelIdentity("codec", UUID.randomUUID());
+        var full = sample(7, origin);
+        var sparse = new TestCodecNettyPacket(-3, Long.MIN_VALUE, "sparse", null, null, null, null, null, null, null);
+        for (var packet : List.of(full, sparse)) {
+            out.writeOutbound(packet);
+            in.writeInbound(drain(out));
+            TestCodecNettyPacket read = in.readInbound();
+            check(read.number() == packet.number() && read.timestamp() == packet.timestamp() && read.name().equals(packet.name())
+                    && Objects.equals(read.origin(), packet.origin()) && Objects.equals(read.session(), packet.session())
+                    && Arrays.equals(read.values(), packet.values()) && Arrays.equals(read.payload(), packet.payload())
+                    && Objects.equals(read.tags(), packet.tags()) && Objects.equals(read.counters(), packet.counters())
+                    && Objects.equals(read.optional(), packet.optional()) && read.cached() == null, "generated codec " + packet.name());
+        }
+    }
+
+    private static void flyweight() {
+        var out = channel(manager(0));
+        var in = channel(manager(0));
+        var position = TestPosition_Flyweight.allocate().entity(99L).x(1.5).y(-2.25).yaw(90f).ground(true);
+        out.writeOutbound(position);
+        var wire = drain(out);
+        in.writeInbound(wire);
+        TestPosition_Flyweight read = in.readInbound();
+        check(read.entity() == 99L && read.x() == 1.5 && read.y() == -2.25 && read.yaw() == 90f && read.ground(), "flyweight layout of " + TestPosition_Flyweight.SIZE + " bytes");
+    }
+
+    private static TestCodecNettyPacket sample(int number, ChannelIdentity origin) {
+        return new TestCodecNettyPacket(number, 1_000_000L + number, "sample-" + number, origin, UUID.randomUUID(),
+                new int[]{1, -1, Integer.MAX_VALUE}, "bytes".getBytes(StandardCharsets.UTF_8), List.of("a", "ü"), Map.of("hits", 3L), number);
+    }
+
+    private static PacketManager manager(int dictionarySize) {
+        var packetManager = new PacketManager();
+        packetManager.dictionarySize(dictionarySize);
+        packetManager.allowPacket(TestCodecNettyPacket.class);
+        packetManager.allowPacket(TestPosition_Flyweight.class);
+        packetManager.allowPacket(JsonNettyPacket.class);
+        return packetManager;
+    }
+
+    private static EmbeddedChannel channel(PacketManager packetManager) {
+        var codecContext = new PacketCodecContext(packetManager);
+        return new EmbeddedChannel(new PacketFrameDecoder(), new PacketFrameEncoder(),
+                new PacketClassDecoder(packetManager, "round-trip", codecContext), new PacketClassEncoder(packetManager, "round-trip", codecContext),
+                new ChannelHandler() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext channelHandlerContext, Object message) {
+                        // flyweight views are only valid during the read
+                        channelHandlerContext.fireChannelRead(message instanceof FlyweightPacket flyweight ? flyweight.copy() : message);
+                    }
+                });
+    }
+
+    private static Buffer drain(EmbeddedChannel channel) {
+        channel.runPendingTasks();
+        var wire = ALLOCATOR.allocate(64);
+        for (Buffer buffer = channel.readOutbound(); buffer != null; buffer = channel.readOutbound()) {
+            wire.ensureWritable(buffer.readableBytes());
+            wire.writeBytes(buffer);
+            buffer.close();
+        }
+        return wire;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+        System.out.println("ok " + message);
+    }
+}
@@ -0,0 +1,71 @@
+package de.pascxl.test.fun.codec;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Mario Kurz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import de.pascxl.packery.network.ChannelIdentity;
+import de.pascxl.packery.packet.codec.CodecNettyPacket;
+import de.pascxl.packery.packet.codec.GeneratedCodec;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Getter
+@GeneratedCodec
+public class TestCodecNettyPacket extends CodecNettyPacket {
+
+    int number;
+    long timestamp;
+    @NonNull
+    String name;
+    ChannelIdentity origin;
+    UUID session;
+    int[] values;
+    byte[] payload;
+    List<String> tags;
+    Map<String, Long> counters;
+    Integer optional;
+    transient String cached;
+
+    public TestCodecNettyPacket() {
+    }
+
+    public TestCodecNettyPacket(int number, long timestamp, @NonNull String name, ChannelIdentity origin, UUID session,
+                                int[] values, byte[] payload, List<String> tags, Map<String, Long> counters, Integer optional) {
+        this.number = number;
+        this.timestamp = timestamp;
+        this.name = name;
+        this.origin = origin;
+        this.session = session;
+        this.values = values;
+        this.payload = payload;
+        this.tags = tags;
+        this.counters = counters;
+        this.optional = optional;
+        this.cached = name;
+    }
+}